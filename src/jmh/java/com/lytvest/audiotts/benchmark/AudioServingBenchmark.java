@@ -0,0 +1,140 @@
+package com.lytvest.audiotts.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отдача аудио файла при одновременных скачиваниях (скачиваний в секунду).
+ *
+ * readAllBytes - прежний путь (файл целиком в byte[] и в ответ), resource - копирование
+ * FileSystemResource потоком, как его пишет Spring MVC, channel - FileChannel.transferTo,
+ * rangeRegion - ответ 206 на случайный диапазон (перемотка в плеере).
+ * Память сравнивается с профайлером gc: ./gradlew jmh -Pjmh.profilers=gc (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+@State(Scope.Benchmark)
+public class AudioServingBenchmark {
+
+    private static final int RANGE_SIZE = 256 * 1024;
+
+    @Param({"1", "32"})
+    public int fileSizeMb;
+
+    private Path file;
+    private long fileSize;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("audio_serving_bench", ".mp3");
+        byte[] chunk = new byte[1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMb; i++) {
+                out.write(chunk);
+            }
+        }
+        fileSize = Files.size(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void readAllBytes(Blackhole bh) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        new DiscardingOutputStream(bh).write(data);
+    }
+
+    @Benchmark
+    public void resource(Blackhole bh) throws IOException {
+        try (InputStream in = new FileSystemResource(file).getInputStream()) {
+            StreamUtils.copy(in, new DiscardingOutputStream(bh));
+        }
+    }
+
+    @Benchmark
+    public void channel(Blackhole bh) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = new DiscardingChannel(bh);
+            long position = 0;
+            while (position < fileSize) {
+                position += channel.transferTo(position, fileSize - position, target);
+            }
+        }
+    }
+
+    @Benchmark
+    public void rangeRegion(Blackhole bh) throws IOException {
+        long start = ThreadLocalRandom.current().nextLong(Math.max(1, fileSize - RANGE_SIZE));
+        ResourceRegion region = new ResourceRegion(new FileSystemResource(file), start, RANGE_SIZE);
+        try (InputStream in = region.getResource().getInputStream()) {
+            StreamUtils.copyRange(in, new DiscardingOutputStream(bh), region.getPosition(),
+                    region.getPosition() + region.getCount() - 1);
+        }
+    }
+
+    /**
+     * Поток ответа, который никуда не пишет
+     */
+    private static class DiscardingOutputStream extends OutputStream {
+        private final Blackhole bh;
+
+        DiscardingOutputStream(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write(int b) {
+            bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bh.consume(b);
+        }
+    }
+
+    private static class DiscardingChannel implements WritableByteChannel {
+        private final Blackhole bh;
+
+        DiscardingChannel(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            bh.consume(src);
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.lytvest.audiotts.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика всех книг: прежние count-запросы на каждую главу против одного GROUP BY.
+ *
+ * SQL повторяет то, что Hibernate генерирует для BookService/BookStatsService, на H2 в памяти
+ * со схемой из ddl-auto (индексы только по первичным и внешним ключам).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BookStatsQueryBenchmark {
+
+    private static final String[] STATUSES = {
+            "WAITING_FOR_CHARACTER", "WAITING_FOR_STRESS", "WAITING_FOR_TTS", "READY"
+    };
+
+    @Param({"100"})
+    public int books;
+
+    @Param({"50"})
+    public int chaptersPerBook;
+
+    @Param({"20"})
+    public int sentencesPerChapter;
+
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:stats_bench;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("DROP ALL OBJECTS");
+            ddl.execute("CREATE TABLE books (id BIGINT PRIMARY KEY, title VARCHAR(255) NOT NULL)");
+            ddl.execute("CREATE TABLE chapters (id BIGINT PRIMARY KEY, book_id BIGINT NOT NULL REFERENCES books(id), " +
+                    "title VARCHAR(255) NOT NULL, chapter_number INT, status VARCHAR(32) NOT NULL)");
+            ddl.execute("CREATE TABLE sentences (id BIGINT PRIMARY KEY, chapter_id BIGINT NOT NULL REFERENCES chapters(id), " +
+                    "sentence_number INT NOT NULL, original_text CLOB NOT NULL, status VARCHAR(32) NOT NULL)");
+        }
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement book = connection.prepareStatement("INSERT INTO books VALUES (?, ?)");
+             PreparedStatement chapter = connection.prepareStatement("INSERT INTO chapters VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement sentence = connection.prepareStatement("INSERT INTO sentences VALUES (?, ?, ?, ?, ?)")) {
+            long chapterId = 0;
+            long sentenceId = 0;
+            for (long b = 1; b <= books; b++) {
+                book.setLong(1, b);
+                book.setString(2, "Book " + b);
+                book.executeUpdate();
+                for (int c = 1; c <= chaptersPerBook; c++) {
+                    chapterId++;
+                    chapter.setLong(1, chapterId);
+                    chapter.setLong(2, b);
+                    chapter.setString(3, "Chapter " + c);
+                    chapter.setInt(4, c);
+                    chapter.setString(5, c % 3 == 0 ? "READY" : "IN_PROGRESS");
+                    chapter.addBatch();
+                    for (int s = 1; s <= sentencesPerChapter; s++) {
+                        sentenceId++;
+                        sentence.setLong(1, sentenceId);
+                        sentence.setLong(2, chapterId);
+                        sentence.setInt(3, s);
+                        sentence.setString(4, "Sentence " + s);
+                        sentence.setString(5, STATUSES[(int) (sentenceId % STATUSES.length)]);
+                        sentence.addBatch();
+                    }
+                }
+                chapter.executeBatch();
+                sentence.executeBatch();
+            }
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Прежний путь: книги, главы каждой книги, два count на каждую главу
+     */
+    @Benchmark
+    public void perChapterCounts(Blackhole bh) throws SQLException {
+        List<Long> bookIds = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT id, title FROM books");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                bookIds.add(rs.getLong(1));
+            }
+        }
+
+        try (PreparedStatement book = connection.prepareStatement("SELECT id, title FROM books WHERE id = ?");
+             PreparedStatement chapters = connection.prepareStatement(
+                     "SELECT id, status FROM chapters WHERE book_id = ? ORDER BY chapter_number");
+             PreparedStatement total = connection.prepareStatement(
+                     "SELECT COUNT(id) FROM sentences WHERE chapter_id = ?");
+             PreparedStatement ready = connection.prepareStatement(
+                     "SELECT COUNT(id) FROM sentences WHERE chapter_id = ? AND status = ?")) {
+            for (Long bookId : bookIds) {
+                book.setLong(1, bookId);
+                try (ResultSet rs = book.executeQuery()) {
+                    rs.next();
+                    bh.consume(rs.getString(2));
+                }
+
+                List<Long> chapterIds = new ArrayList<>();
+                chapters.setLong(1, bookId);
+                try (ResultSet rs = chapters.executeQuery()) {
+                    while (rs.next()) {
+                        chapterIds.add(rs.getLong(1));
+                        bh.consume(rs.getString(2));
+                    }
+                }
+
+                long totalSentences = 0;
+                long readySentences = 0;
+                for (Long chapterId : chapterIds) {
+                    total.setLong(1, chapterId);
+                    try (ResultSet rs = total.executeQuery()) {
+                        rs.next();
+                        totalSentences += rs.getLong(1);
+                    }
+                    ready.setLong(1, chapterId);
+                    ready.setString(2, "READY");
+                    try (ResultSet rs = ready.executeQuery()) {
+                        rs.next();
+                        readySentences += rs.getLong(1);
+                    }
+                }
+                bh.consume(totalSentences);
+                bh.consume(readySentences);
+            }
+        }
+    }
+
+    /**
+     * Новый путь: один запрос BookRepository.aggregateProgress
+     */
+    @Benchmark
+    public void aggregated(Blackhole bh) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT b.id, b.title, c.id, c.status, s.status, COUNT(s.id) " +
+                "FROM books b LEFT JOIN chapters c ON c.book_id = b.id LEFT JOIN sentences s ON s.chapter_id = c.id " +
+                "GROUP BY b.id, b.title, c.id, c.status, s.status ORDER BY b.id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                bh.consume(rs.getLong(1));
+                bh.consume(rs.getString(4));
+                bh.consume(rs.getString(5));
+                bh.consume(rs.getLong(6));
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.lytvest.audiotts.benchmark;
+
+import com.lytvest.audiotts.service.SentenceSegmenter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Скорость разбиения большой FB2 книги на предложения (предложений в секунду).
+ *
+ * legacy - прежний однопоточный алгоритм (новый BreakIterator на параграф, regex на предложение),
+ * segmenter - SentenceSegmenter с заданной параллельностью (0 - по числу процессоров).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SentenceSegmentationBenchmark {
+
+    private static final String[] PHRASES = {
+            "— Да.",
+            "Он долго смотрел в окно, где медленно падал снег, и думал о том, что завтра всё изменится.",
+            "— Ты уверен? — спросила она, не поднимая глаз.",
+            "В комнате было тихо; только часы на стене отсчитывали секунды.",
+            "Т. е. ничего нового он не услышал...",
+            "Дорога шла через лес, потом через поле, а потом снова через лес!"
+    };
+
+    @State(Scope.Benchmark)
+    public static class Sample {
+
+        @Param({"300"})
+        public int chapters;
+
+        @Param({"200"})
+        public int paragraphsPerChapter;
+
+        List<List<String>> paragraphs;
+
+        @Setup
+        public void setUp() {
+            Document doc = Jsoup.parse(generateFb2(chapters, paragraphsPerChapter), "",
+                    org.jsoup.parser.Parser.xmlParser());
+
+            paragraphs = new ArrayList<>();
+            for (Element section : doc.select("body > section")) {
+                List<String> chapter = new ArrayList<>();
+                for (Element p : section.select("p")) {
+                    chapter.add(p.text().trim());
+                }
+                paragraphs.add(chapter);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Segmenter {
+
+        @Param({"1", "0"})
+        public int parallelism;
+
+        SentenceSegmenter segmenter;
+
+        @Setup
+        public void setUp() {
+            segmenter = new SentenceSegmenter(parallelism);
+        }
+
+        @TearDown
+        public void tearDown() {
+            segmenter.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Sentences {
+        public long sentences;
+    }
+
+    @Benchmark
+    public void legacy(Sample sample, Sentences counter, Blackhole bh) {
+        for (List<String> chapter : sample.paragraphs) {
+            for (String paragraph : chapter) {
+                List<String> sentences = legacySplit(paragraph);
+                counter.sentences += sentences.size();
+                bh.consume(sentences);
+            }
+        }
+    }
+
+    @Benchmark
+    public void segmenter(Sample sample, Segmenter segmenter, Sentences counter, Blackhole bh) {
+        AtomicLong total = new AtomicLong();
+        segmenter.segmenter.forEachParallel(sample.paragraphs, chapter -> {
+            int count = 0;
+            for (String paragraph : chapter) {
+                List<String> sentences = segmenter.segmenter.splitIntoSentences(paragraph);
+                count += sentences.size();
+                bh.consume(sentences);
+            }
+            total.addAndGet(count);
+        });
+        counter.sentences += total.get();
+    }
+
+    /**
+     * Прежняя реализация Fb2ParserService.splitIntoSentences
+     */
+    private static List<String> legacySplit(String text) {
+        List<String> sentences = new ArrayList<>();
+
+        BreakIterator iterator = BreakIterator.getSentenceInstance(new Locale("ru"));
+        iterator.setText(text);
+
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            String sentence = text.substring(start, end).trim();
+            if (sentence.length() > 3 && !sentence.matches("^[\\s\\p{Punct}]*$")) {
+                sentences.add(sentence);
+            }
+        }
+        return sentences;
+    }
+
+    private static String generateFb2(int chapters, int paragraphsPerChapter) {
+        StringBuilder xml = new StringBuilder(chapters * paragraphsPerChapter * 200);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\">")
+                .append("<description><title-info><book-title>Benchmark</book-title></title-info></description>")
+                .append("<body>");
+
+        int phrase = 0;
+        for (int c = 1; c <= chapters; c++) {
+            xml.append("<section><title><p>Глава ").append(c).append("</p></title>");
+            for (int p = 0; p < paragraphsPerChapter; p++) {
+                xml.append("<p>");
+                for (int s = 0; s < 3; s++) {
+                    xml.append(PHRASES[phrase++ % PHRASES.length]).append(' ');
+                }
+                xml.append("</p>");
+            }
+            xml.append("</section>");
+        }
+
+        return xml.append("</body></FictionBook>").toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.lytvest.audiotts.controller;
+
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Ответ с аудио файлом.
+ *
+ * Тело - Resource: Spring MVC копирует файл в ответ потоком, сам отвечает 206 на Range
+ * (416 на недопустимый диапазон) и 304 на If-None-Match/If-Modified-Since по ETag и Last-Modified.
+ * Участок сегмента главы не меняется, пока на него ссылается предложение, поэтому ETag участка -
+ * его расположение, а Last-Modified (время последней дописи в сегмент) не отдается.
+ */
+final class AudioFileResponse {
+
+    private static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
+    private AudioFileResponse() {
+    }
+
+    /**
+     * Отдает файл целиком или запрошенный диапазон
+     */
+    static ResponseEntity<?> of(Path file, String filename, HttpHeaders requestHeaders) {
+        FileSystemResource resource = new FileSystemResource(file);
+        long size;
+        long lastModified;
+        try {
+            size = resource.contentLength();
+            lastModified = resource.lastModified();
+        } catch (IOException e) {
+            throw new RuntimeException("Audio file not found", e);
+        }
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        return respond(resource, size, etag, lastModified, filename, requestHeaders);
+    }
+
+    /**
+     * Отдает аудио предложения: отдельный файл или участок сегмента главы (без filename - для воспроизведения)
+     */
+    static ResponseEntity<?> of(AudioSegment audio, String filename, HttpHeaders requestHeaders) {
+        if (!audio.isSlice()) {
+            return of(audio.getPath(), filename, requestHeaders);
+        }
+        String etag = "\"" + Long.toHexString(audio.getLength()) + "-" + Long.toHexString(audio.getOffset()) + "-"
+                + Integer.toHexString(audio.getPath().getFileName().toString().hashCode()) + "\"";
+        return respond(new AudioSegmentResource(audio), audio.getLength(), etag, -1, filename, requestHeaders);
+    }
+
+    private static ResponseEntity<?> respond(Resource resource, long size, String etag, long lastModified,
+                                             String filename, HttpHeaders requestHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(AUDIO_MPEG);
+        if (filename != null) {
+            headers.setContentDispositionFormData("attachment", filename);
+        }
+        headers.setETag(etag);
+        if (lastModified > 0) {
+            headers.setLastModified(lastModified);
+        }
+        // Клиент может хранить файл, но проверяет его по ETag перед использованием
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+
+        if (requestHeaders.getFirst(HttpHeaders.RANGE) != null && !ifRangeMatches(requestHeaders, etag, lastModified)) {
+            // Файл изменился после первой части: по If-Range отдаем его целиком
+            // (к InputStreamResource Spring не применяет Range)
+            headers.setContentLength(size);
+            try {
+                return ResponseEntity.ok().headers(headers).body(new InputStreamResource(resource.getInputStream()));
+            } catch (IOException e) {
+                throw new RuntimeException("Audio file not found", e);
+            }
+        }
+
+        return ResponseEntity.ok().headers(headers).body(resource);
+    }
+
+    private static boolean ifRangeMatches(HttpHeaders requestHeaders, String etag, long lastModified) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Для диапазонов подходит только сильное сравнение
+            return ifRange.equals(etag);
+        }
+        try {
+            return lastModified > 0 && requestHeaders.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Участок сегмента как Resource: Spring берет из него длину и поток (для диапазона - с пропуском)
+     */
+    private static class AudioSegmentResource extends AbstractResource {
+        private final AudioSegment audio;
+
+        AudioSegmentResource(AudioSegment audio) {
+            this.audio = audio;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return audio.open();
+        }
+
+        @Override
+        public long contentLength() {
+            return audio.getLength();
+        }
+
+        @Override
+        public boolean exists() {
+            return audio.exists();
+        }
+
+        @Override
+        public String getDescription() {
+            return "audio segment [" + audio + "]";
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package com.lytvest.audiotts.controller;
 
 import com.lytvest.audiotts.dto.BookDto;
+import com.lytvest.audiotts.dto.BookExportDto;
+import com.lytvest.audiotts.dto.BookRevisionDto;
+import com.lytvest.audiotts.dto.ReprocessResultDto;
 import com.lytvest.audiotts.dto.request.BookUploadRequest;
+import com.lytvest.audiotts.dto.request.ReprocessRequest;
 import com.lytvest.audiotts.dto.response.ApiResponse;
+import com.lytvest.audiotts.model.enums.BookProcessingStatus;
+import com.lytvest.audiotts.service.BookExportService;
 import com.lytvest.audiotts.service.BookService;
+import com.lytvest.audiotts.service.ReprocessingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.validation.Valid;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/books")
@@ -21,6 +32,8 @@ import java.util.List;
 public class BooksController {
     
     private final BookService bookService;
+    private final ReprocessingService reprocessingService;
+    private final BookExportService bookExportService;
     
     /**
      * Загружает FB2 файл
@@ -41,6 +54,27 @@ public class BooksController {
         }
     }
     
+    /**
+     * Загружает новую редакцию книги (переозвучиваются только измененные предложения)
+     */
+    @PostMapping(value = "/{bookId}/revisions", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<BookRevisionDto>> uploadRevision(
+            @PathVariable Long bookId,
+            @RequestParam("file") MultipartFile file) {
+        try {
+            BookRevisionDto revision = bookService.uploadRevision(bookId, file);
+            return ResponseEntity.ok(ApiResponse.success("Book revision uploaded successfully", revision));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid revision upload for book {}: {}", bookId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error uploading revision of book {}", bookId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to upload book revision: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Получает список всех книг
      */
@@ -113,11 +147,7 @@ public class BooksController {
     @GetMapping("/stats/all")
     public ResponseEntity<ApiResponse<List<BookService.BookProcessingStats>>> getAllBooksStats() {
         try {
-            List<BookDto> books = bookService.getAllBooks();
-            List<BookService.BookProcessingStats> allStats = books.stream()
-                    .map(book -> bookService.getBookProcessingStats(book.getId()))
-                    .toList();
-            
+            List<BookService.BookProcessingStats> allStats = bookService.getAllBookProcessingStats();
             return ResponseEntity.ok(ApiResponse.success(allStats));
         } catch (Exception e) {
             log.error("Error getting stats for all books", e);
@@ -185,6 +215,70 @@ public class BooksController {
         }
     }
     
+    /**
+     * Повторно обрабатывает выбранные предложения книги (глава, персонаж, статус, диапазон) с заданного этапа
+     */
+    @PostMapping("/{bookId}/reprocess")
+    public ResponseEntity<ApiResponse<ReprocessResultDto>> reprocessBook(
+            @PathVariable Long bookId,
+            @Valid @RequestBody ReprocessRequest request) {
+        try {
+            ReprocessResultDto result = reprocessingService.reprocess(bookId, request);
+            return ResponseEntity.ok(ApiResponse.success("Reprocessing started", result));
+        } catch (RuntimeException e) {
+            log.warn("Book {} not found for reprocessing", bookId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Book not found"));
+        }
+    }
+    
+    /**
+     * Запускает экспорт книги одним MP3 файлом с оглавлением (фоновая задача)
+     */
+    @PostMapping("/{bookId}/export")
+    public ResponseEntity<ApiResponse<BookExportDto>> startExport(@PathVariable Long bookId) {
+        try {
+            BookExportDto export = bookExportService.startExport(bookId);
+            return ResponseEntity.ok(ApiResponse.success("Book export started", export));
+        } catch (RuntimeException e) {
+            log.warn("Book {} cannot be exported: {}", bookId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Получает состояние экспорта книги
+     */
+    @GetMapping("/{bookId}/export")
+    public ResponseEntity<ApiResponse<BookExportDto>> getExport(@PathVariable Long bookId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(bookExportService.getExport(bookId)));
+        } catch (RuntimeException e) {
+            log.warn("Book {} not found for export", bookId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Book not found"));
+        }
+    }
+    
+    /**
+     * Скачивает экспорт книги одним MP3 файлом (с Range и условными запросами)
+     */
+    @GetMapping("/{bookId}/export/audio")
+    public ResponseEntity<?> downloadExport(@PathVariable Long bookId, @RequestHeader HttpHeaders requestHeaders) {
+        try {
+            Optional<Path> exportFile = bookExportService.getExportFile(bookId);
+            if (exportFile.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return AudioFileResponse.of(exportFile.get(), "book_" + bookId + ".mp3", requestHeaders);
+            
+        } catch (RuntimeException e) {
+            log.error("Error downloading export of book {}", bookId, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
     /**
      * Получает книги по статусу обработки
      */
@@ -192,13 +286,7 @@ public class BooksController {
     public ResponseEntity<ApiResponse<List<BookDto>>> getBooksByProcessingStatus(
             @RequestParam(defaultValue = "all") String status) {
         try {
-            List<BookDto> books;
-            switch (status.toLowerCase()) {
-                case "completed" -> books = bookService.getCompletedBooks();
-                case "processing" -> books = bookService.getProcessingBooks();
-                case "waiting" -> books = bookService.getWaitingBooks();
-                default -> books = bookService.getAllBooks();
-            }
+            List<BookDto> books = bookService.getBooksByProcessingStatus(BookProcessingStatus.fromParameter(status));
             
             return ResponseEntity.ok(ApiResponse.success(books));
         } catch (Exception e) {
@@ -1,16 +1,25 @@
 package com.lytvest.audiotts.controller;
 
 import com.lytvest.audiotts.dto.ChapterDto;
+import com.lytvest.audiotts.dto.ChapterTimingDto;
 import com.lytvest.audiotts.dto.response.ApiResponse;
+import com.lytvest.audiotts.service.ChapterPlaylistService;
 import com.lytvest.audiotts.service.ChapterService;
+import com.lytvest.audiotts.service.ChapterTimingService;
+import com.lytvest.audiotts.service.audio.Mp3Layout;
+import com.lytvest.audiotts.service.storage.StoredZipArchive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/chapters")
@@ -18,7 +27,11 @@ import java.util.List;
 @Slf4j
 public class ChapterController {
     
+    private static final MediaType HLS_PLAYLIST = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+    
     private final ChapterService chapterService;
+    private final ChapterPlaylistService chapterPlaylistService;
+    private final ChapterTimingService chapterTimingService;
     
     /**
      * Получает главы книги
@@ -30,20 +43,27 @@ public class ChapterController {
     }
     
     /**
-     * Скачивает аудио файл главы
+     * Скачивает аудио файл главы: готовая глава отдается файлом (с Range и условными запросами),
+     * незавершенная склеивается потоком
      */
     @GetMapping("/{chapterId}/audio")
-    public ResponseEntity<byte[]> downloadChapterAudio(@PathVariable Long chapterId) {
+    public ResponseEntity<?> downloadChapterAudio(@PathVariable Long chapterId,
+                                                  @RequestHeader HttpHeaders requestHeaders) {
         try {
-            byte[] audioData = chapterService.generateChapterAudio(chapterId);
+            Optional<Path> chapterFile = chapterService.getChapterAudioFile(chapterId);
+            if (chapterFile.isPresent()) {
+                return AudioFileResponse.of(chapterFile.get(), "chapter_" + chapterId + ".mp3", requestHeaders);
+            }
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType("audio/mpeg"));
             headers.setContentDispositionFormData("attachment", "chapter_" + chapterId + ".mp3");
             
+            Mp3Layout audio = chapterService.prepareChapterAudio(chapterId);
+            StreamingResponseBody body = outputStream -> chapterService.writeChapterAudio(audio, outputStream);
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(audioData);
+                    .body(body);
                     
         } catch (RuntimeException e) {
             log.error("Error downloading audio for chapter {}", chapterId, e);
@@ -52,20 +72,80 @@ public class ChapterController {
     }
     
     /**
-     * Скачивает всю книгу как ZIP архив
+     * Получает индекс времени главы: начало и длительность каждого готового предложения,
+     * для собранной главы - и байтовые смещения в ее файле
+     */
+    @GetMapping("/{chapterId}/timing")
+    public ResponseEntity<ApiResponse<ChapterTimingDto>> getChapterTiming(@PathVariable Long chapterId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chapterTimingService.getTiming(chapterId)));
+        } catch (RuntimeException e) {
+            log.error("Error building timing for chapter {}", chapterId, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * HLS плейлист главы: готовые предложения по порядку; пока глава озвучивается, плейлист живой
+     * и только дополняется (или перезапускается, если готовое начало главы изменилось)
+     */
+    @GetMapping("/{chapterId}/playlist.m3u8")
+    public ResponseEntity<String> getChapterPlaylist(@PathVariable Long chapterId) {
+        try {
+            String playlist = chapterPlaylistService.buildPlaylist(chapterId, "segments/");
+            return ResponseEntity.ok()
+                    .contentType(HLS_PLAYLIST)
+                    .cacheControl(CacheControl.noCache())
+                    .body(playlist);
+                    
+        } catch (RuntimeException e) {
+            log.error("Error building playlist for chapter {}", chapterId, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Сегмент HLS плейлиста - аудио кадры предложения главы с ID3 тегом времени начала
+     */
+    @GetMapping("/{chapterId}/segments/{sentenceId}.mp3")
+    public ResponseEntity<StreamingResponseBody> getChapterSegment(@PathVariable Long chapterId,
+                                                                   @PathVariable Long sentenceId) {
+        try {
+            ChapterPlaylistService.HlsSegment segment = chapterPlaylistService.getSegment(chapterId, sentenceId);
+            StreamingResponseBody body = segment::write;
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("audio/mpeg"))
+                    .contentLength(segment.length())
+                    .cacheControl(CacheControl.noCache())
+                    .body(body);
+            
+        } catch (RuntimeException e) {
+            log.warn("Segment {} of chapter {} not available: {}", sentenceId, chapterId, e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Скачивает всю книгу как ZIP архив (готовые главы без сжатия, потоком)
      */
     @GetMapping("/book/{bookId}/download")
-    public ResponseEntity<byte[]> downloadBookAsZip(@PathVariable Long bookId) {
+    public ResponseEntity<StreamingResponseBody> downloadBookAsZip(@PathVariable Long bookId) {
         try {
-            byte[] zipData = chapterService.generateBookZip(bookId);
+            StoredZipArchive archive = chapterService.prepareBookZip(bookId);
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType("application/zip"));
             headers.setContentDispositionFormData("attachment", "book_" + bookId + ".zip");
             
+            StreamingResponseBody body = out -> {
+                try (archive) {
+                    archive.write(out);
+                }
+            };
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(zipData);
+                    .contentLength(archive.length())
+                    .body(body);
                     
         } catch (RuntimeException e) {
             log.error("Error downloading book {} as ZIP", bookId, e);
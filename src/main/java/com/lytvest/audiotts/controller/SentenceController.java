@@ -0,0 +1,50 @@
+package com.lytvest.audiotts.controller;
+
+import com.lytvest.audiotts.dto.response.ApiResponse;
+import com.lytvest.audiotts.dto.response.SentencePageDto;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.service.SentenceProcessingService;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/sentences")
+@RequiredArgsConstructor
+@Slf4j
+public class SentenceController {
+    
+    private final SentenceProcessingService sentenceProcessingService;
+    
+    /**
+     * Получает предложения по статусу; следующая страница запрашивается с afterId = nextAfterId
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<SentencePageDto>> getSentences(
+            @RequestParam(defaultValue = "WAITING_FOR_CHARACTER") SentenceStatus status,
+            @RequestParam(defaultValue = "0") long afterId,
+            @RequestParam(defaultValue = "50") int size) {
+        
+        SentencePageDto page = sentenceProcessingService.getSentencesByStatus(status, afterId, size);
+        return ResponseEntity.ok(ApiResponse.success(page));
+    }
+    
+    /**
+     * Скачивает аудио файл предложения (поддерживаются Range и условные запросы)
+     */
+    @GetMapping("/{sentenceId}/audio")
+    public ResponseEntity<?> downloadSentenceAudio(@PathVariable Long sentenceId,
+                                                   @RequestHeader HttpHeaders requestHeaders) {
+        try {
+            AudioSegment audio = sentenceProcessingService.getSentenceAudio(sentenceId);
+            return AudioFileResponse.of(audio, "sentence_" + sentenceId + ".mp3", requestHeaders);
+                    
+        } catch (RuntimeException e) {
+            log.error("Error downloading audio for sentence {}", sentenceId, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -4,8 +4,10 @@ import com.lytvest.audiotts.dto.response.ApiResponse;
 import com.lytvest.audiotts.dto.response.VoiceDto;
 import com.lytvest.audiotts.service.external.F5TtsService;
 import com.lytvest.audiotts.service.queue.QueueService;
+import com.lytvest.audiotts.service.storage.AudioStorageMigration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,6 +23,7 @@ public class SystemController {
     
     private final F5TtsService f5TtsService;
     private final QueueService queueService;
+    private final AudioStorageMigration audioStorageMigration;
     
     /**
      * Проверка здоровья системы
@@ -80,4 +83,18 @@ public class SystemController {
         QueueService.QueueStats stats = queueService.getQueueStats();
         return ResponseEntity.ok(ApiResponse.success(stats));
     }
-}
\ No newline at end of file
+    
+    /**
+     * Переносит аудио старой раскладки: файлы предложений в сегменты глав, файлы глав в подкаталоги по хешу
+     */
+    @PostMapping("/storage/migrate")
+    public ResponseEntity<ApiResponse<AudioStorageMigration.MigrationResult>> migrateAudioStorage() {
+        try {
+            AudioStorageMigration.MigrationResult result = audioStorageMigration.migrate();
+            return ResponseEntity.ok(ApiResponse.success("Audio storage migrated", result));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+}
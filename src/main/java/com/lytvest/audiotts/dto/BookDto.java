@@ -11,6 +11,7 @@ public class BookDto {
     private String title;
     private String author;
     private String originalFilename;
+    private Integer deduplicatedSentences;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private List<ChapterDto> chapters;
@@ -0,0 +1,19 @@
+package com.lytvest.audiotts.dto;
+
+import com.lytvest.audiotts.model.enums.ExportStatus;
+import lombok.Data;
+
+/**
+ * Состояние экспорта книги одним MP3 файлом для текущего набора собранных глав
+ */
+@Data
+public class BookExportDto {
+    private Long bookId;
+    private ExportStatus status;
+    // Версия экспорта: меняется вместе с аудио любой главы
+    private String version;
+    private int chapters;
+    private int totalChapters;
+    private Long audioSize;
+    private String error;
+}
@@ -0,0 +1,18 @@
+package com.lytvest.audiotts.dto;
+
+import lombok.Data;
+
+/**
+ * Результат загрузки новой редакции книги
+ */
+@Data
+public class BookRevisionDto {
+    private Long bookId;
+    private boolean changed;
+    private int chaptersAdded;
+    private int chaptersRemoved;
+    private int sentencesKept;
+    private int sentencesModified;
+    private int sentencesInserted;
+    private int sentencesRemoved;
+}
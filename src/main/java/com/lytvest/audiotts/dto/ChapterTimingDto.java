@@ -0,0 +1,21 @@
+package com.lytvest.audiotts.dto;
+
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Индекс времени главы: начало каждого готового предложения в аудио главы
+ */
+@Data
+public class ChapterTimingDto {
+    private Long chapterId;
+    private ChapterStatus status;
+    // Все предложения готовы и вошли в индекс
+    private boolean complete;
+    private long durationMillis;
+    // Размер собранного файла главы (null, пока глава не собрана)
+    private Long audioSize;
+    private List<SentenceTimingDto> sentences;
+}
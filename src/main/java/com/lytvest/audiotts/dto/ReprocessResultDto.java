@@ -0,0 +1,14 @@
+package com.lytvest.audiotts.dto;
+
+import com.lytvest.audiotts.model.enums.ReprocessStage;
+import lombok.Data;
+
+/**
+ * Результат повторной обработки книги
+ */
+@Data
+public class ReprocessResultDto {
+    private Long bookId;
+    private ReprocessStage stage;
+    private int sentencesReset;
+}
@@ -9,6 +9,8 @@ import java.time.LocalDateTime;
 public class SentenceDto {
     private Long id;
     private Integer sentenceNumber;
+    private Integer sourceSentenceNumber;
+    private Integer sourceSentenceCount;
     private String originalText;
     private String textWithStress;
     private SentenceStatus status;
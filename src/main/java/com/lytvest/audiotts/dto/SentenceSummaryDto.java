@@ -0,0 +1,28 @@
+package com.lytvest.audiotts.dto;
+
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Предложение для списков: строится JPQL проекцией вместе с персонажем одним запросом
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SentenceSummaryDto {
+    private Long id;
+    private Long chapterId;
+    private Integer sentenceNumber;
+    private String originalText;
+    private String textWithStress;
+    private SentenceStatus status;
+    private String audioFilePath;
+    private Long characterId;
+    private String characterName;
+    private String voiceId;
+    private LocalDateTime updatedAt;
+}
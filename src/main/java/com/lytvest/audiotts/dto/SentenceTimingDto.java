@@ -0,0 +1,16 @@
+package com.lytvest.audiotts.dto;
+
+import lombok.Data;
+
+/**
+ * Положение предложения в аудио главы; байтовые смещения есть только у собранной главы
+ */
+@Data
+public class SentenceTimingDto {
+    private Long sentenceId;
+    private Integer sentenceNumber;
+    private long startMillis;
+    private long durationMillis;
+    private Long byteOffset;
+    private Long byteLength;
+}
@@ -1,5 +1,6 @@
 package com.lytvest.audiotts.dto.request;
 
+import com.lytvest.audiotts.model.enums.DuplicateUploadMode;
 import lombok.Data;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -17,4 +18,7 @@ public class BookUploadRequest {
     
     @Size(max = 255, message = "Author must not exceed 255 characters")
     private String author;
+    
+    // Что делать, если такая книга уже загружена (по умолчанию - app.upload.duplicate-mode)
+    private DuplicateUploadMode onDuplicate;
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.lytvest.audiotts.dto.request;
+
+import com.lytvest.audiotts.model.enums.ReprocessStage;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import lombok.Data;
+
+import jakarta.validation.constraints.Min;
+
+/**
+ * Область и этап повторной обработки книги; незаданные фильтры не ограничивают выборку
+ */
+@Data
+public class ReprocessRequest {
+    
+    private ReprocessStage stage = ReprocessStage.FROM_CHARACTER;
+    
+    private Long chapterId;
+    
+    private Long characterId;
+    
+    private SentenceStatus status;
+    
+    // Диапазон номеров предложений в главе (включительно)
+    @Min(value = 1, message = "Sentence number must be positive")
+    private Integer fromSentence;
+    
+    @Min(value = 1, message = "Sentence number must be positive")
+    private Integer toSentence;
+}
@@ -0,0 +1,16 @@
+package com.lytvest.audiotts.dto.response;
+
+import com.lytvest.audiotts.dto.SentenceSummaryDto;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница предложений с курсором на следующую (keyset пагинация по id)
+ */
+@Data
+public class SentencePageDto {
+    private List<SentenceSummaryDto> sentences;
+    // Передается как afterId для следующей страницы; null, если страница последняя
+    private Long nextAfterId;
+}
@@ -31,6 +31,13 @@ public class Book {
     @Column(name = "file_path")
     private String filePath;
     
+    // SHA-256 распакованного FB2 для поиска повторных загрузок
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    @Column(name = "deduplicated_sentences")
+    private Integer deduplicatedSentences;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -38,6 +38,13 @@ public class Chapter {
     @Column(name = "audio_file_path")
     private String audioFilePath;
     
+    // Размер и CRC32 файла аудио главы (для ZIP без сжатия)
+    @Column(name = "audio_size")
+    private Long audioSize;
+    
+    @Column(name = "audio_crc32")
+    private Long audioCrc32;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -31,7 +31,7 @@ public class CharacterBook {
     @Column(name = "voice_name")
     private String voiceName;
     
-    @Lob
+    @Column(columnDefinition = "TEXT")
     private String description;
     
     @Column(name = "created_at")
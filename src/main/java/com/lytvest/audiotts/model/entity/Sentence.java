@@ -30,21 +30,48 @@ public class Sentence {
     @Column(name = "sentence_number", nullable = false)
     private Integer sentenceNumber;
     
-    @Lob
-    @Column(name = "original_text", nullable = false)
+    // Исходные предложения главы, из которых собран фрагмент
+    @Column(name = "source_sentence_number")
+    private Integer sourceSentenceNumber;
+    
+    @Column(name = "source_sentence_count")
+    private Integer sourceSentenceCount;
+    
+    @Column(name = "original_text", nullable = false, columnDefinition = "TEXT")
     private String originalText;
     
-    @Lob
-    @Column(name = "text_with_stress")
+    @Column(name = "text_with_stress", columnDefinition = "TEXT")
     private String textWithStress;
     
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private SentenceStatus status = SentenceStatus.WAITING_FOR_CHARACTER;
     
+    // Растет при каждом сбросе обработки; задачи несут поколение, с которым поставлены, и их
+    // результаты записываются, только пока оно не изменилось
+    @Column(name = "processing_generation", nullable = false)
+    private Integer processingGeneration = 0;
+    
     @Column(name = "audio_file_path")
     private String audioFilePath;
     
+    // Участок файла сегмента главы (null - audioFilePath указывает на отдельный файл)
+    @Column(name = "audio_offset")
+    private Long audioOffset;
+    
+    @Column(name = "audio_length")
+    private Long audioLength;
+    
+    // Длительность в сэмплах и объем MP3 кадров аудио (для времени и смещений предложения в склеенной главе)
+    @Column(name = "audio_samples")
+    private Long audioSamples;
+    
+    @Column(name = "audio_sample_rate")
+    private Integer audioSampleRate;
+    
+    @Column(name = "audio_frame_bytes")
+    private Long audioFrameBytes;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -0,0 +1,32 @@
+package com.lytvest.audiotts.model.enums;
+
+/**
+ * Фильтр книг по прогрессу обработки
+ */
+public enum BookProcessingStatus {
+    ALL,
+    WAITING,
+    PROCESSING,
+    COMPLETED;
+    
+    public boolean matches(int progressPercentage) {
+        return switch (this) {
+            case ALL -> true;
+            case WAITING -> progressPercentage == 0;
+            case PROCESSING -> progressPercentage > 0 && progressPercentage < 100;
+            case COMPLETED -> progressPercentage == 100;
+        };
+    }
+    
+    /**
+     * Разбирает значение параметра запроса (неизвестные значения означают все книги)
+     */
+    public static BookProcessingStatus fromParameter(String value) {
+        for (BookProcessingStatus status : values()) {
+            if (status.name().equalsIgnoreCase(value)) {
+                return status;
+            }
+        }
+        return ALL;
+    }
+}
@@ -0,0 +1,6 @@
+package com.lytvest.audiotts.model.enums;
+
+public enum DuplicateUploadMode {
+    RETURN_EXISTING,
+    CLONE
+}
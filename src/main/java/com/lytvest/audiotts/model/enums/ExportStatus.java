@@ -0,0 +1,8 @@
+package com.lytvest.audiotts.model.enums;
+
+public enum ExportStatus {
+    NOT_STARTED,
+    IN_PROGRESS,
+    READY,
+    FAILED
+}
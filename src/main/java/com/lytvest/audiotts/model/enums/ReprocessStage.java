@@ -0,0 +1,13 @@
+package com.lytvest.audiotts.model.enums;
+
+/**
+ * С какого этапа повторно обрабатываются предложения
+ */
+public enum ReprocessStage {
+    // Заново определить персонажа, ударения и аудио
+    FROM_CHARACTER,
+    // Сохранить персонажа, заново расставить ударения и озвучить
+    FROM_STRESS,
+    // Только заново озвучить
+    TTS_ONLY
+}
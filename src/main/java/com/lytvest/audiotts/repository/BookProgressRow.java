@@ -0,0 +1,22 @@
+package com.lytvest.audiotts.repository;
+
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+
+/**
+ * Строка агрегированного прогресса: число предложений книги в главе с заданным статусом
+ */
+public interface BookProgressRow {
+    
+    Long getBookId();
+    
+    String getBookTitle();
+    
+    Long getChapterId();
+    
+    ChapterStatus getChapterStatus();
+    
+    SentenceStatus getSentenceStatus();
+    
+    long getSentenceCount();
+}
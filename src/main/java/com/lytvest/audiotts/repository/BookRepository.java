@@ -13,6 +13,8 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     
     Optional<Book> findByTitle(String title);
     
+    Optional<Book> findFirstByContentHashOrderByIdAsc(String contentHash);
+    
     @Query("SELECT b FROM Book b LEFT JOIN FETCH b.chapters WHERE b.id = :id")
     Optional<Book> findByIdWithChapters(Long id);
     
@@ -20,4 +22,16 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     Optional<Book> findByIdWithCharacters(Long id);
     
     List<Book> findByAuthorContainingIgnoreCase(String author);
+    
+    @Query("SELECT b.id AS bookId, b.title AS bookTitle, c.id AS chapterId, c.status AS chapterStatus, " +
+           "s.status AS sentenceStatus, COUNT(s) AS sentenceCount " +
+           "FROM Book b LEFT JOIN b.chapters c LEFT JOIN c.sentences s " +
+           "GROUP BY b.id, b.title, c.id, c.status, s.status ORDER BY b.id")
+    List<BookProgressRow> aggregateProgress();
+    
+    @Query("SELECT b.id AS bookId, b.title AS bookTitle, c.id AS chapterId, c.status AS chapterStatus, " +
+           "s.status AS sentenceStatus, COUNT(s) AS sentenceCount " +
+           "FROM Book b LEFT JOIN b.chapters c LEFT JOIN c.sentences s " +
+           "WHERE b.id = :bookId GROUP BY b.id, b.title, c.id, c.status, s.status")
+    List<BookProgressRow> aggregateProgressByBookId(Long bookId);
 }
\ No newline at end of file
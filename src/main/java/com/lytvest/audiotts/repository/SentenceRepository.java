@@ -1,14 +1,15 @@
 package com.lytvest.audiotts.repository;
 
+import com.lytvest.audiotts.dto.SentenceSummaryDto;
 import com.lytvest.audiotts.model.entity.Sentence;
 import com.lytvest.audiotts.model.enums.SentenceStatus;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface SentenceRepository extends JpaRepository<Sentence, Long> {
@@ -17,7 +18,10 @@ public interface SentenceRepository extends JpaRepository<Sentence, Long> {
     
     List<Sentence> findByStatus(SentenceStatus status);
     
-    Page<Sentence> findByStatus(SentenceStatus status, Pageable pageable);
+    @Query("SELECT new com.lytvest.audiotts.dto.SentenceSummaryDto(s.id, s.chapter.id, s.sentenceNumber, s.originalText, " +
+           "s.textWithStress, s.status, s.audioFilePath, c.id, c.name, c.voiceId, s.updatedAt) " +
+           "FROM Sentence s LEFT JOIN s.character c WHERE s.status = :status AND s.id > :afterId ORDER BY s.id")
+    List<SentenceSummaryDto> findSummariesByStatusAfterId(SentenceStatus status, Long afterId, Limit limit);
     
     List<Sentence> findByChapterIdAndStatus(Long chapterId, SentenceStatus status);
     
@@ -27,6 +31,9 @@ public interface SentenceRepository extends JpaRepository<Sentence, Long> {
     @Query("SELECT COUNT(s) FROM Sentence s WHERE s.chapter.id = :chapterId")
     long countByChapterId(Long chapterId);
     
+    @Query("SELECT s.chapter.id FROM Sentence s WHERE s.id = :sentenceId")
+    Optional<Long> findChapterIdById(Long sentenceId);
+    
     @Query("SELECT s FROM Sentence s WHERE s.status = :status ORDER BY s.id LIMIT 1")
     Sentence findFirstByStatusOrderById(SentenceStatus status);
 }
\ No newline at end of file
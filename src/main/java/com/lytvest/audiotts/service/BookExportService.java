@@ -0,0 +1,324 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.dto.BookExportDto;
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.ExportStatus;
+import com.lytvest.audiotts.service.audio.Id3ChapterTag;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3Layout;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import com.lytvest.audiotts.service.storage.AudioStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Экспорт книги одним MP3 файлом с оглавлением.
+ *
+ * Файл собирается фоновой задачей из собранных файлов глав: ID3v2 тег с кадрами глав (CHAP/CTOC),
+ * один Xing/Info кадр на всю книгу и аудио кадры глав подряд; запись идет потоком во временный файл
+ * и атомарно переименовывается. Версия экспорта - CRC32 от названия книги и размеров и CRC32 глав,
+ * она входит в имя файла (book_42.1a2b3c4d.mp3), поэтому готовый файл отдается, пока аудио глав
+ * не изменилось, а после изменения просто перестает находиться до следующего экспорта.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookExportService {
+
+    private static final String CHAPTERS_SQL = "SELECT id, chapter_number, title, status, audio_file_path, " +
+            "audio_size, audio_crc32 FROM chapters WHERE book_id = ? ORDER BY chapter_number";
+
+    private static final String EXPORT_EXTENSION = ".mp3";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AudioStorage audioStorage;
+    private final Mp3Assembler mp3Assembler;
+
+    @Lazy
+    @Autowired
+    private BookExportService self;
+
+    // Последняя запущенная задача экспорта по книге (готовые убираются: их состояние - файл на диске)
+    private final Map<Long, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Задача экспорта одной версии книги
+     */
+    static class ExportJob {
+        final String version;
+        volatile ExportStatus status = ExportStatus.IN_PROGRESS;
+        volatile String error;
+
+        ExportJob(String version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Собранные главы книги на момент запроса
+     */
+    record BookSnapshot(Long bookId, String title, String author, List<ChapterFile> chapters,
+                        int totalChapters, String version) {
+    }
+
+    record ChapterFile(int number, String title, Path path) {
+    }
+
+    /**
+     * Получает состояние экспорта текущей версии книги
+     */
+    public BookExportDto getExport(Long bookId) {
+        BookSnapshot snapshot = snapshot(bookId);
+        return toDto(snapshot, jobs.get(bookId));
+    }
+
+    /**
+     * Запускает фоновый экспорт, если текущей версии нет на диске и она еще не собирается
+     */
+    public BookExportDto startExport(Long bookId) {
+        BookSnapshot snapshot = snapshot(bookId);
+        if (snapshot.chapters().isEmpty()) {
+            throw new RuntimeException("No ready chapters found for book");
+        }
+        if (Files.exists(exportPath(bookId, snapshot.version()))) {
+            return toDto(snapshot, null);
+        }
+
+        ExportJob[] started = new ExportJob[1];
+        ExportJob job = jobs.compute(bookId, (id, current) -> {
+            if (current != null && current.version.equals(snapshot.version())
+                    && current.status == ExportStatus.IN_PROGRESS) {
+                return current;
+            }
+            started[0] = new ExportJob(snapshot.version());
+            return started[0];
+        });
+        if (started[0] != null) {
+            log.info("Starting export of book {} ({} of {} chapters, version {})",
+                    bookId, snapshot.chapters().size(), snapshot.totalChapters(), snapshot.version());
+            self.export(snapshot, started[0]);
+        }
+        return toDto(snapshot, job);
+    }
+
+    /**
+     * Получает файл экспорта текущей версии книги; пусто, если он еще не собран
+     */
+    public Optional<Path> getExportFile(Long bookId) {
+        BookSnapshot snapshot = snapshot(bookId);
+        Path path = exportPath(bookId, snapshot.version());
+        return snapshot.chapters().isEmpty() || !Files.exists(path) ? Optional.empty() : Optional.of(path);
+    }
+
+    /**
+     * Собирает файл книги: тег с оглавлением, Xing/Info кадр и кадры глав
+     */
+    @Async
+    public void export(BookSnapshot snapshot, ExportJob job) {
+        Long bookId = snapshot.bookId();
+        Path target = exportPath(bookId, snapshot.version());
+        // Файлы глав открываются один раз: сканирование и копирование кадров читают одни и те же файлы,
+        // даже если главу пересобрали (файл заменен) или удалили в процессе
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            List<ChapterFile> chapters = new ArrayList<>();
+            List<AudioSegment> files = new ArrayList<>();
+            for (ChapterFile chapter : snapshot.chapters()) {
+                FileChannel channel;
+                try {
+                    channel = FileChannel.open(chapter.path(), StandardOpenOption.READ);
+                } catch (NoSuchFileException e) {
+                    log.warn("Audio file not found: {}", chapter.path());
+                    continue;
+                }
+                channels.add(channel);
+                chapters.add(chapter);
+                files.add(AudioSegment.ofChannel(chapter.path(), channel));
+            }
+            Mp3Layout layout = mp3Assembler.scan(files);
+            if (layout.isEmpty()) {
+                throw new IOException("Chapters of book have no audio frames");
+            }
+
+            byte[] tag = new Id3ChapterTag(snapshot.title(), snapshot.author(), tagChapters(chapters, files, layout))
+                    .toBytes();
+            long size = audioStorage.write(target, out -> {
+                out.write(tag);
+                mp3Assembler.write(layout, out);
+            });
+
+            if (jobs.remove(bookId, job)) {
+                deleteOtherVersions(bookId, target);
+            } else {
+                // Пока файл собирался, запустили экспорт новой версии
+                log.debug("Export {} of book {} is outdated, discarded", snapshot.version(), bookId);
+                audioStorage.delete(target);
+                return;
+            }
+            log.info("Exported book {}: {} chapters, {} ms, {} bytes", bookId, snapshot.chapters().size(),
+                    layout.getDurationMillis(), size);
+
+        } catch (IOException | RuntimeException e) {
+            log.error("Error exporting book {}", bookId, e);
+            job.error = e.getMessage();
+            job.status = ExportStatus.FAILED;
+        } finally {
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Could not close chapter file of book {}", bookId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет файлы экспорта книги после коммита (книга удалена)
+     */
+    public void deleteExports(Long bookId) {
+        Runnable delete = () -> {
+            jobs.remove(bookId);
+            deleteOtherVersions(bookId, null);
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            delete.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                delete.run();
+            }
+        });
+    }
+
+    /**
+     * Границы глав в итоговом файле: время по числу кадров, байты от начала аудио данных (после тега)
+     */
+    private static List<Id3ChapterTag.Chapter> tagChapters(List<ChapterFile> chapterFiles, List<AudioSegment> files,
+                                                           Mp3Layout layout) {
+        List<Id3ChapterTag.Chapter> chapters = new ArrayList<>();
+        List<Mp3Layout.Part> parts = layout.getParts();
+        long frames = 0;
+        long bytes = layout.getInfoFrame().length;
+        int partIndex = 0;
+        for (int i = 0; i < files.size() && partIndex < parts.size(); i++) {
+            Mp3Layout.Part part = parts.get(partIndex);
+            if (part.audio != files.get(i)) {
+                // В файле главы нет кадров: глава не попала в аудио
+                continue;
+            }
+            ChapterFile chapter = chapterFiles.get(i);
+            String title = chapter.title() != null ? chapter.title() : "Chapter " + chapter.number();
+            chapters.add(new Id3ChapterTag.Chapter(title, layout.durationMillis(frames),
+                    layout.durationMillis(frames + part.frames), bytes, bytes + part.bytes));
+            frames += part.frames;
+            bytes += part.bytes;
+            partIndex++;
+        }
+        return chapters;
+    }
+
+    private BookSnapshot snapshot(Long bookId) {
+        List<Map<String, Object>> book = jdbcTemplate.queryForList("SELECT title, author FROM books WHERE id = ?", bookId);
+        if (book.isEmpty()) {
+            throw new RuntimeException("Book not found");
+        }
+        String title = (String) book.get(0).get("title");
+        String author = (String) book.get(0).get("author");
+
+        CRC32 crc = new CRC32();
+        crc.update((title + "\n" + author).getBytes(StandardCharsets.UTF_8));
+        List<ChapterFile> chapters = new ArrayList<>();
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(CHAPTERS_SQL, bookId);
+        for (Map<String, Object> row : rows) {
+            String path = (String) row.get("audio_file_path");
+            if (!ChapterStatus.READY.name().equals(row.get("status")) || path == null
+                    || row.get("audio_size") == null || row.get("audio_crc32") == null) {
+                continue;
+            }
+            int number = ((Number) row.get("chapter_number")).intValue();
+            String chapterTitle = (String) row.get("title");
+            chapters.add(new ChapterFile(number, chapterTitle, Paths.get(path)));
+            crc.update(("\n" + number + ":" + chapterTitle + ":" + row.get("audio_size") + ":" + row.get("audio_crc32"))
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return new BookSnapshot(bookId, title, author, chapters, rows.size(), String.format("%08x", crc.getValue()));
+    }
+
+    private BookExportDto toDto(BookSnapshot snapshot, ExportJob job) {
+        BookExportDto dto = new BookExportDto();
+        dto.setBookId(snapshot.bookId());
+        dto.setVersion(snapshot.version());
+        dto.setChapters(snapshot.chapters().size());
+        dto.setTotalChapters(snapshot.totalChapters());
+
+        Path path = exportPath(snapshot.bookId(), snapshot.version());
+        if (!snapshot.chapters().isEmpty() && Files.exists(path)) {
+            dto.setStatus(ExportStatus.READY);
+            try {
+                dto.setAudioSize(Files.size(path));
+            } catch (IOException e) {
+                log.warn("Could not read size of book export {}", path, e);
+            }
+        } else if (job != null && job.version.equals(snapshot.version())) {
+            dto.setStatus(job.status);
+            dto.setError(job.error);
+        } else {
+            dto.setStatus(ExportStatus.NOT_STARTED);
+        }
+        return dto;
+    }
+
+    /**
+     * Все версии экспорта книги лежат в одном подкаталоге (по хешу имени книги)
+     */
+    private Path exportPath(Long bookId, String version) {
+        return audioStorage.shardedPath(AudioStorage.BOOKS_DIRECTORY, "book_" + bookId + EXPORT_EXTENSION)
+                .resolveSibling("book_" + bookId + "." + version + EXPORT_EXTENSION);
+    }
+
+    /**
+     * Удаляет файлы экспорта книги, кроме keep
+     */
+    private void deleteOtherVersions(Long bookId, Path keep) {
+        Path directory = exportPath(bookId, "").getParent();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "book_" + bookId + ".*" + EXPORT_EXTENSION)) {
+            for (Path file : stream) {
+                if (!file.equals(keep)) {
+                    audioStorage.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not clean old exports of book {}", bookId, e);
+        }
+    }
+}
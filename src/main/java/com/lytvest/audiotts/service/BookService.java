@@ -3,25 +3,39 @@ package com.lytvest.audiotts.service;
 import com.lytvest.audiotts.controller.BooksController;
 import com.lytvest.audiotts.dto.*;
 import com.lytvest.audiotts.dto.request.BookUploadRequest;
+import com.lytvest.audiotts.dto.request.ReprocessRequest;
 import com.lytvest.audiotts.model.entity.*;
+import com.lytvest.audiotts.model.enums.BookProcessingStatus;
 import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.DuplicateUploadMode;
 import com.lytvest.audiotts.model.enums.SentenceStatus;
 import com.lytvest.audiotts.repository.*;
 import com.lytvest.audiotts.service.queue.CharacterDeterminationTask;
-import com.lytvest.audiotts.service.queue.QueueService;
 import com.lytvest.audiotts.service.queue.StressTask;
+import com.lytvest.audiotts.service.queue.TaskDispatcher;
+import com.lytvest.audiotts.service.storage.BookFileStorage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -35,10 +49,16 @@ public class BookService {
     private final CharacterRepository characterRepository;
     private final SentenceRepository sentenceRepository;
     private final Fb2ParserService fb2ParserService;
-    private final QueueService queueService;
+    private final BookFileStorage bookFileStorage;
+    private final BookStatsService bookStatsService;
+    private final ReprocessingService reprocessingService;
+    private final ChapterAudioService chapterAudioService;
+    private final BookExportService bookExportService;
+    private final TaskDispatcher taskDispatcher;
+    private final SentenceProcessingService sentenceProcessingService;
     
-    @Value("${app.storage.books-path}")
-    private String booksStoragePath;
+    @Value("${app.upload.duplicate-mode}")
+    private DuplicateUploadMode duplicateUploadMode;
     
     /**
      * Загружает и обрабатывает FB2 файл
@@ -49,21 +69,33 @@ public class BookService {
             MultipartFile file = request.getFile();
             
             // Проверяем тип файла
-            if (!file.getOriginalFilename().toLowerCase().endsWith(".fb2")) {
-                throw new IllegalArgumentException("Only FB2 files are supported");
+            if (!BookFileStorage.isSupported(file.getOriginalFilename())) {
+                throw new IllegalArgumentException("Only FB2 and FB2.ZIP files are supported");
             }
             
-            // Создаем директорию для хранения файлов если не существует
-            Path storagePath = Paths.get(booksStoragePath);
-            Files.createDirectories(storagePath);
+            // Сохраняем файл в сжатом виде
+            BookFileStorage.StoredBookFile stored = bookFileStorage.store(file);
+            Path filePath = stored.path;
             
-            // Сохраняем файл
-            String filename = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-            Path filePath = storagePath.resolve(filename);
-            file.transferTo(filePath);
+            // Повторная загрузка уже известной книги не должна запускать LLM и TTS заново
+            Optional<Book> existing = bookRepository.findFirstByContentHashOrderByIdAsc(stored.contentHash);
+            if (existing.isPresent()) {
+                DuplicateUploadMode mode = request.getOnDuplicate() != null ? request.getOnDuplicate() : duplicateUploadMode;
+                log.info("Uploaded file matches existing book {} ({}), mode {}", 
+                        existing.get().getId(), existing.get().getTitle(), mode);
+                
+                if (mode == DuplicateUploadMode.CLONE) {
+                    return convertToDto(cloneBook(existing.get(), stored, request));
+                }
+                bookFileStorage.delete(filePath);
+                return convertToDto(existing.get());
+            }
             
-            // Парсим FB2 файл
-            Fb2ParserService.ParsedBook parsedBook = fb2ParserService.parseFb2File(file.getBytes());
+            // Парсим FB2 файл потоком прямо из архива
+            Fb2ParserService.ParsedBook parsedBook;
+            try (InputStream fb2 = bookFileStorage.openFb2(filePath)) {
+                parsedBook = fb2ParserService.parseFb2Stream(fb2);
+            }
             
             // Создаем сущность книги
             Book book = new Book();
@@ -71,6 +103,8 @@ public class BookService {
             book.setAuthor(request.getAuthor() != null ? request.getAuthor() : parsedBook.author);
             book.setOriginalFilename(file.getOriginalFilename());
             book.setFilePath(filePath.toString());
+            book.setContentHash(stored.contentHash);
+            book.setDeduplicatedSentences(parsedBook.deduplicatedSentences);
             
             book = bookRepository.save(book);
             
@@ -86,12 +120,9 @@ public class BookService {
                 
                 // Создаем предложения
                 int sentenceNumber = 1;
-                for (String sentenceText : parsedChapter.sentences) {
-                    Sentence sentence = new Sentence();
-                    sentence.setChapter(chapter);
-                    sentence.setSentenceNumber(sentenceNumber++);
-                    sentence.setOriginalText(sentenceText);
-                    sentence.setStatus(SentenceStatus.WAITING_FOR_CHARACTER);
+                for (TextChunker.Chunk chunk : parsedChapter.sources) {
+                    String sentenceText = chunk.text;
+                    Sentence sentence = newSentence(chapter, sentenceNumber++, chunk);
                     
                     sentence = sentenceRepository.save(sentence);
                     
@@ -105,9 +136,10 @@ public class BookService {
                             sentence.getId(),
                             sentenceText,
                             existingCharacters,
-                            book.getId()
+                            book.getId(),
+                            sentence.getProcessingGeneration()
                     );
-                    queueService.addCharacterDeterminationTask(task);
+                    taskDispatcher.dispatch(task);
                 }
                 
                 // Устанавливаем статус главы "в работе"
@@ -115,6 +147,7 @@ public class BookService {
                 chapterRepository.save(chapter);
             }
             
+            bookStatsService.bookChanged(book.getId());
             log.info("Successfully uploaded book: {} with {} chapters", book.getTitle(), parsedBook.chapters.size());
             
             return convertToDto(book);
@@ -125,6 +158,296 @@ public class BookService {
         }
     }
     
+    private Sentence newSentence(Chapter chapter, int sentenceNumber, TextChunker.Chunk chunk) {
+        Sentence sentence = new Sentence();
+        sentence.setChapter(chapter);
+        sentence.setSentenceNumber(sentenceNumber);
+        sentence.setSourceSentenceNumber(chunk.firstSentence);
+        sentence.setSourceSentenceCount(chunk.sentenceCount);
+        sentence.setOriginalText(chunk.text);
+        sentence.setStatus(SentenceStatus.WAITING_FOR_CHARACTER);
+        return sentence;
+    }
+    
+    /**
+     * Загружает новую редакцию книги: неизмененные предложения сохраняют персонажа, ударения и аудио,
+     * в очереди попадают только добавленные и измененные
+     */
+    @Transactional
+    public BookRevisionDto uploadRevision(Long bookId, MultipartFile file) {
+        try {
+            Book book = bookRepository.findById(bookId)
+                    .orElseThrow(() -> new RuntimeException("Book not found"));
+            
+            if (!BookFileStorage.isSupported(file.getOriginalFilename())) {
+                throw new IllegalArgumentException("Only FB2 and FB2.ZIP files are supported");
+            }
+            
+            BookFileStorage.StoredBookFile stored = bookFileStorage.store(file);
+            
+            BookRevisionDto result = new BookRevisionDto();
+            result.setBookId(bookId);
+            
+            if (stored.contentHash.equals(book.getContentHash())) {
+                bookFileStorage.delete(stored.path);
+                log.info("Revision of book {} is identical to the current edition", bookId);
+                return result;
+            }
+            
+            Fb2ParserService.ParsedBook parsedBook;
+            try (InputStream fb2 = bookFileStorage.openFb2(stored.path)) {
+                parsedBook = fb2ParserService.parseFb2Stream(fb2);
+            }
+            
+            List<String> characterNames = characterRepository.findByBookId(bookId).stream()
+                    .map(CharacterBook::getName)
+                    .collect(Collectors.toList());
+            
+            // Сопоставляем главы по заголовкам, несовпавшие главы на одной позиции считаем исправленными
+            List<Chapter> oldChapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
+            List<String> oldTitles = oldChapters.stream().map(Chapter::getTitle).collect(Collectors.toList());
+            List<String> newTitles = parsedBook.chapters.stream().map(c -> c.title).collect(Collectors.toList());
+            
+            int[] chapterMatch = SequenceAligner.align(oldTitles, newTitles);
+            List<Long> removedChapterIds = new ArrayList<>();
+            Chapter[] targets = new Chapter[newTitles.size()];
+            for (int i = 0; i < chapterMatch.length; i++) {
+                if (chapterMatch[i] >= 0) {
+                    targets[chapterMatch[i]] = oldChapters.get(i);
+                }
+            }
+            for (SequenceAligner.Hunk hunk : SequenceAligner.hunks(chapterMatch, newTitles.size())) {
+                int paired = Math.min(hunk.oldTo - hunk.oldFrom, hunk.newTo - hunk.newFrom);
+                for (int k = 0; k < paired; k++) {
+                    targets[hunk.newFrom + k] = oldChapters.get(hunk.oldFrom + k);
+                }
+                for (int i = hunk.oldFrom + paired; i < hunk.oldTo; i++) {
+                    chapterRepository.delete(oldChapters.get(i));
+                    removedChapterIds.add(oldChapters.get(i).getId());
+                    result.setChaptersRemoved(result.getChaptersRemoved() + 1);
+                }
+            }
+            
+            List<Sentence> pending = new ArrayList<>();
+            for (int j = 0; j < targets.length; j++) {
+                Fb2ParserService.ParsedChapter parsedChapter = parsedBook.chapters.get(j);
+                Chapter chapter = targets[j];
+                if (chapter == null) {
+                    chapter = new Chapter();
+                    chapter.setBook(book);
+                    chapter.setStatus(ChapterStatus.WAITING);
+                    result.setChaptersAdded(result.getChaptersAdded() + 1);
+                }
+                chapter.setTitle(parsedChapter.title);
+                chapter.setChapterNumber(parsedChapter.chapterNumber);
+                chapter = chapterRepository.save(chapter);
+                
+                int chapterPending = pending.size();
+                int chapterRemoved = result.getSentencesRemoved();
+                reviseChapterSentences(chapter, parsedChapter, result, pending);
+                if (pending.size() > chapterPending || result.getSentencesRemoved() > chapterRemoved) {
+                    // Собранное аудио главы устарело; глава без новых предложений соберется заново сразу
+                    chapter.setStatus(ChapterStatus.IN_PROGRESS);
+                    chapter.setAudioFilePath(null);
+                    chapter.setAudioSize(null);
+                    chapter.setAudioCrc32(null);
+                }
+            }
+            
+            for (Sentence sentence : pending) {
+                if (sentence.getStatus() == SentenceStatus.WAITING_FOR_STRESS) {
+                    taskDispatcher.dispatch(new StressTask(sentence.getId(), sentence.getOriginalText(),
+                            sentence.getProcessingGeneration()));
+                } else {
+                    taskDispatcher.dispatch(new CharacterDeterminationTask(sentence.getId(), sentence.getOriginalText(),
+                            characterNames, bookId, sentence.getProcessingGeneration()));
+                }
+            }
+            
+            Path previousFile = book.getFilePath() != null ? Paths.get(book.getFilePath()) : null;
+            book.setOriginalFilename(file.getOriginalFilename());
+            book.setFilePath(stored.path.toString());
+            book.setContentHash(stored.contentHash);
+            book.setDeduplicatedSentences(parsedBook.deduplicatedSentences);
+            bookRepository.save(book);
+            if (previousFile != null) {
+                bookFileStorage.delete(previousFile);
+            }
+            
+            result.setChanged(true);
+            chapterRepository.flush();
+            chapterAudioService.assembleCompleteChapters(bookId);
+            chapterAudioService.deleteAudio(removedChapterIds);
+            bookStatsService.bookChanged(bookId);
+            log.info("Uploaded revision of book {}: {}", bookId, result);
+            return result;
+            
+        } catch (IOException e) {
+            log.error("Error uploading revision of book {}", bookId, e);
+            throw new RuntimeException("Failed to upload book revision", e);
+        }
+    }
+    
+    /**
+     * Выравнивает предложения главы с новой редакцией. Измененное предложение на месте старого
+     * сохраняет персонажа и идет сразу на расстановку ударений.
+     */
+    private void reviseChapterSentences(Chapter chapter, Fb2ParserService.ParsedChapter parsedChapter,
+                                        BookRevisionDto result, List<Sentence> pending) {
+        List<Sentence> oldSentences = chapter.getId() != null
+                ? sentenceRepository.findByChapterIdOrderBySentenceNumber(chapter.getId())
+                : List.of();
+        List<String> oldTexts = oldSentences.stream().map(Sentence::getOriginalText).collect(Collectors.toList());
+        List<TextChunker.Chunk> chunks = parsedChapter.sources;
+        
+        int[] match = SequenceAligner.align(oldTexts, parsedChapter.sentences);
+        Sentence[] rows = new Sentence[chunks.size()];
+        List<Sentence> removed = new ArrayList<>();
+        
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] >= 0) {
+                rows[match[i]] = oldSentences.get(i);
+                result.setSentencesKept(result.getSentencesKept() + 1);
+            }
+        }
+        
+        for (SequenceAligner.Hunk hunk : SequenceAligner.hunks(match, chunks.size())) {
+            int paired = Math.min(hunk.oldTo - hunk.oldFrom, hunk.newTo - hunk.newFrom);
+            for (int k = 0; k < paired; k++) {
+                Sentence sentence = oldSentences.get(hunk.oldFrom + k);
+                sentence.setOriginalText(chunks.get(hunk.newFrom + k).text);
+                sentence.setTextWithStress(null);
+                sentence.setAudioFilePath(null);
+                sentence.setAudioOffset(null);
+                sentence.setAudioLength(null);
+                sentence.setAudioSamples(null);
+                sentence.setAudioSampleRate(null);
+                sentence.setAudioFrameBytes(null);
+                sentence.setStatus(sentence.getCharacter() != null
+                        ? SentenceStatus.WAITING_FOR_STRESS
+                        : SentenceStatus.WAITING_FOR_CHARACTER);
+                // Задачи старого текста, еще идущие в очередях, не запишут результат
+                sentence.setProcessingGeneration(sentence.getProcessingGeneration() + 1);
+                rows[hunk.newFrom + k] = sentence;
+                pending.add(sentence);
+                result.setSentencesModified(result.getSentencesModified() + 1);
+            }
+            for (int i = hunk.oldFrom + paired; i < hunk.oldTo; i++) {
+                removed.add(oldSentences.get(i));
+            }
+        }
+        
+        for (int j = 0; j < rows.length; j++) {
+            TextChunker.Chunk chunk = chunks.get(j);
+            if (rows[j] == null) {
+                rows[j] = newSentence(chapter, j + 1, chunk);
+                pending.add(rows[j]);
+                result.setSentencesInserted(result.getSentencesInserted() + 1);
+            }
+            rows[j].setSentenceNumber(j + 1);
+            rows[j].setSourceSentenceNumber(chunk.firstSentence);
+            rows[j].setSourceSentenceCount(chunk.sentenceCount);
+        }
+        
+        sentenceRepository.deleteAll(removed);
+        sentenceRepository.saveAll(Arrays.asList(rows));
+        result.setSentencesRemoved(result.getSentencesRemoved() + removed.size());
+    }
+    
+    /**
+     * Копирует уже обработанную книгу: главы, предложения и персонажи переносятся вместе с
+     * ударениями и ссылками на готовое аудио, в очереди попадают только незавершенные предложения
+     */
+    private Book cloneBook(Book source, BookFileStorage.StoredBookFile stored, BookUploadRequest request) {
+        Book book = new Book();
+        book.setTitle(request.getTitle() != null ? request.getTitle() : source.getTitle());
+        book.setAuthor(request.getAuthor() != null ? request.getAuthor() : source.getAuthor());
+        book.setOriginalFilename(request.getFile().getOriginalFilename());
+        book.setFilePath(stored.path.toString());
+        book.setContentHash(stored.contentHash);
+        book.setDeduplicatedSentences(source.getDeduplicatedSentences());
+        book = bookRepository.save(book);
+        
+        Map<Long, CharacterBook> characters = new HashMap<>();
+        for (CharacterBook sourceCharacter : characterRepository.findByBookId(source.getId())) {
+            CharacterBook character = new CharacterBook();
+            character.setBook(book);
+            character.setName(sourceCharacter.getName());
+            character.setVoiceId(sourceCharacter.getVoiceId());
+            character.setVoiceName(sourceCharacter.getVoiceName());
+            character.setDescription(sourceCharacter.getDescription());
+            characters.put(sourceCharacter.getId(), characterRepository.save(character));
+        }
+        
+        Map<Long, Long> sourceByClone = new HashMap<>();
+        int pending = 0;
+        
+        for (Chapter sourceChapter : chapterRepository.findByBookIdOrderByChapterNumber(source.getId())) {
+            Chapter chapter = new Chapter();
+            chapter.setBook(book);
+            chapter.setTitle(sourceChapter.getTitle());
+            chapter.setChapterNumber(sourceChapter.getChapterNumber());
+            // Аудио главы у копии свое: готовые главы соберутся заново из общих файлов предложений
+            chapter.setStatus(sourceChapter.getStatus() == ChapterStatus.READY ? ChapterStatus.IN_PROGRESS : sourceChapter.getStatus());
+            chapter = chapterRepository.save(chapter);
+            
+            List<Sentence> sourceSentences = sentenceRepository.findByChapterIdOrderBySentenceNumber(sourceChapter.getId());
+            List<Sentence> sentences = new ArrayList<>();
+            for (Sentence sourceSentence : sourceSentences) {
+                Sentence sentence = new Sentence();
+                sentence.setChapter(chapter);
+                sentence.setSentenceNumber(sourceSentence.getSentenceNumber());
+                sentence.setSourceSentenceNumber(sourceSentence.getSourceSentenceNumber());
+                sentence.setSourceSentenceCount(sourceSentence.getSourceSentenceCount());
+                sentence.setOriginalText(sourceSentence.getOriginalText());
+                sentence.setTextWithStress(sourceSentence.getTextWithStress());
+                // Копия ссылается на тот же участок сегмента исходной главы
+                sentence.setAudioFilePath(sourceSentence.getAudioFilePath());
+                sentence.setAudioOffset(sourceSentence.getAudioOffset());
+                sentence.setAudioLength(sourceSentence.getAudioLength());
+                sentence.setAudioSamples(sourceSentence.getAudioSamples());
+                sentence.setAudioSampleRate(sourceSentence.getAudioSampleRate());
+                sentence.setAudioFrameBytes(sourceSentence.getAudioFrameBytes());
+                sentence.setStatus(sourceSentence.getStatus());
+                if (sourceSentence.getCharacter() != null) {
+                    sentence.setCharacter(characters.get(sourceSentence.getCharacter().getId()));
+                }
+                sentences.add(sentence);
+            }
+            sentences = sentenceRepository.saveAll(sentences);
+            
+            // Задачи незавершенных предложений оригинала уже в очередях: копия их не повторяет,
+            // а получает результат исходного предложения, когда оно станет готово
+            for (int i = 0; i < sentences.size(); i++) {
+                Sentence sentence = sentences.get(i);
+                if (sentence.getStatus() == SentenceStatus.READY) {
+                    continue;
+                }
+                pending++;
+                if (sentence.getTextWithStress() != null && sentence.getCharacter() != null) {
+                    sentence.setStatus(SentenceStatus.WAITING_FOR_TTS);
+                } else if (sentence.getCharacter() != null) {
+                    sentence.setStatus(SentenceStatus.WAITING_FOR_STRESS);
+                } else {
+                    sentence.setStatus(SentenceStatus.WAITING_FOR_CHARACTER);
+                }
+                sourceByClone.put(sentence.getId(), sourceSentences.get(i).getId());
+            }
+        }
+        
+        sentenceRepository.flush();
+        chapterAudioService.assembleCompleteChapters(book.getId());
+        bookStatsService.bookChanged(book.getId());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sentenceProcessingService.followSourceSentences(sourceByClone);
+            }
+        });
+        log.info("Cloned book {} into {} ({} sentences wait for the source book)", source.getId(), book.getId(), pending);
+        return book;
+    }
+    
     /**
      * Получает список всех книг
      */
@@ -167,6 +490,7 @@ public class BookService {
         }
         
         book = bookRepository.save(book);
+        bookStatsService.bookChanged(bookId);
         log.info("Updated book {}: title='{}', author='{}'", bookId, book.getTitle(), book.getAuthor());
         
         return convertToDto(book);
@@ -189,7 +513,14 @@ public class BookService {
         }
         
         // Удаляем из базы данных (каскадно удалятся главы, предложения и персонажи)
+        List<Long> chapterIds = chapterRepository.findByBookIdOrderByChapterNumber(bookId).stream()
+                .map(Chapter::getId)
+                .collect(Collectors.toList());
         bookRepository.delete(book);
+        chapterAudioService.deleteAudio(chapterIds);
+        bookExportService.deleteExports(bookId);
+        bookStatsService.bookDeleted(bookId);
+        sentenceProcessingService.forgetBookCharacters(bookId);
         
         log.info("Deleted book: {}", book.getTitle());
     }
@@ -197,122 +528,74 @@ public class BookService {
     /**
      * Перезапускает обработку книги
      */
-    @Transactional
     public void restartBookProcessing(Long bookId) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found"));
-        
-        List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
-        
-        for (Chapter chapter : chapters) {
-            // Сбрасываем статус главы
-            chapter.setStatus(ChapterStatus.IN_PROGRESS);
-            chapterRepository.save(chapter);
-            
-            // Получаем все предложения главы
-            List<Sentence> sentences = sentenceRepository.findByChapterIdOrderBySentenceNumber(chapter.getId());
-            
-            for (Sentence sentence : sentences) {
-                // Сбрасываем статус предложения и добавляем в очередь
-                sentence.setStatus(SentenceStatus.WAITING_FOR_CHARACTER);
-                sentence.setCharacter(null);
-                sentence.setTextWithStress(null);
-                sentence.setAudioFilePath(null);
-                sentenceRepository.save(sentence);
-                
-                // Добавляем в очередь определения персонажей
-                List<String> existingCharacters = characterRepository.findByBookId(bookId)
-                        .stream()
-                        .map(CharacterBook::getName)
-                        .collect(Collectors.toList());
-                
-                CharacterDeterminationTask task = new CharacterDeterminationTask(
-                        sentence.getId(),
-                        sentence.getOriginalText(),
-                        existingCharacters,
-                        bookId
-                );
-                queueService.addCharacterDeterminationTask(task);
-            }
-        }
-        
-        log.info("Restarted processing for book: {}", book.getTitle());
+        reprocessingService.reprocess(bookId, new ReprocessRequest());
     }
     
     /**
      * Получает завершенные книги
      */
     public List<BookDto> getCompletedBooks() {
-        return bookRepository.findAll().stream()
-                .filter(book -> {
-                    BookProcessingStats stats = getBookProcessingStats(book.getId());
-                    return stats.progressPercentage == 100;
-                })
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return getBooksByProcessingStatus(BookProcessingStatus.COMPLETED);
     }
     
     /**
      * Получает книги в процессе обработки
      */
     public List<BookDto> getProcessingBooks() {
-        return bookRepository.findAll().stream()
-                .filter(book -> {
-                    BookProcessingStats stats = getBookProcessingStats(book.getId());
-                    return stats.progressPercentage > 0 && stats.progressPercentage < 100;
-                })
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return getBooksByProcessingStatus(BookProcessingStatus.PROCESSING);
     }
     
     /**
      * Получает книги, ожидающие обработки
      */
     public List<BookDto> getWaitingBooks() {
-        return bookRepository.findAll().stream()
-                .filter(book -> {
-                    BookProcessingStats stats = getBookProcessingStats(book.getId());
-                    return stats.progressPercentage == 0;
-                })
-                .map(this::convertToDto)
+        return getBooksByProcessingStatus(BookProcessingStatus.WAITING);
+    }
+    
+    /**
+     * Получает книги с заданным прогрессом обработки
+     */
+    public List<BookDto> getBooksByProcessingStatus(BookProcessingStatus status) {
+        return getBooksWithStats(status, Pageable.unpaged()).stream()
+                .map(bookWithStats -> bookWithStats.book)
                 .collect(Collectors.toList());
     }
     
     /**
-     * Получает статистику обработки книги
+     * Получает страницу книг вместе со статистикой: фильтр выполняется по счетчикам прогресса,
+     * сами книги загружаются одним запросом
      */
-    public BookProcessingStats getBookProcessingStats(Long bookId) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found"));
-        
-        List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
+    public Page<BookWithStats> getBooksWithStats(BookProcessingStatus status, Pageable pageable) {
+        Page<BookProcessingStats> stats = bookStatsService.getBookStats(status, pageable);
         
-        int totalChapters = chapters.size();
-        int readyChapters = (int) chapters.stream()
-                .filter(c -> c.getStatus() == ChapterStatus.READY)
-                .count();
+        List<Long> bookIds = stats.stream().map(s -> s.bookId).collect(Collectors.toList());
+        Map<Long, Book> books = bookRepository.findAllById(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, book -> book));
         
-        long totalSentences = 0;
-        long readySentences = 0;
-        
-        for (Chapter chapter : chapters) {
-            long chapterSentenceCount = sentenceRepository.countByChapterId(chapter.getId());
-            long chapterReadySentenceCount = sentenceRepository.countByChapterIdAndStatus(
-                    chapter.getId(), SentenceStatus.READY);
-            
-            totalSentences += chapterSentenceCount;
-            readySentences += chapterReadySentenceCount;
+        List<BookWithStats> content = new ArrayList<>();
+        for (BookProcessingStats bookStats : stats) {
+            Book book = books.get(bookStats.bookId);
+            // Книга могла быть удалена между чтением счетчиков и запросом
+            if (book != null) {
+                content.add(new BookWithStats(convertToDto(book), bookStats));
+            }
         }
-        
-        return BookProcessingStats.builder()
-                .bookId(bookId)
-                .bookTitle(book.getTitle())
-                .totalChapters(totalChapters)
-                .readyChapters(readyChapters)
-                .totalSentences((int) totalSentences)
-                .readySentences((int) readySentences)
-                .progressPercentage(totalSentences > 0 ? (int) ((readySentences * 100) / totalSentences) : 0)
-                .build();
+        return new PageImpl<>(content, pageable, stats.getTotalElements());
+    }
+    
+    /**
+     * Получает статистику обработки книги
+     */
+    public BookProcessingStats getBookProcessingStats(Long bookId) {
+        return bookStatsService.getBookStats(bookId);
+    }
+    
+    /**
+     * Получает статистику обработки всех книг одним запросом
+     */
+    public List<BookProcessingStats> getAllBookProcessingStats() {
+        return new ArrayList<>(bookStatsService.getAllBookStats().values());
     }
     
     private BookDto convertToDto(Book book) {
@@ -321,6 +604,7 @@ public class BookService {
         dto.setTitle(book.getTitle());
         dto.setAuthor(book.getAuthor());
         dto.setOriginalFilename(book.getOriginalFilename());
+        dto.setDeduplicatedSentences(book.getDeduplicatedSentences());
         dto.setCreatedAt(book.getCreatedAt());
         dto.setUpdatedAt(book.getUpdatedAt());
         return dto;
@@ -329,8 +613,9 @@ public class BookService {
     private BookDto convertToDtoWithChapters(Book book) {
         BookDto dto = convertToDto(book);
         
+        Map<Long, BookStatsService.ChapterProgress> progress = bookStatsService.getChapterProgress(book.getId());
         List<ChapterDto> chapterDtos = book.getChapters().stream()
-                .map(this::convertChapterToDto)
+                .map(chapter -> convertChapterToDto(chapter, progress.get(chapter.getId())))
                 .collect(Collectors.toList());
         
         dto.setChapters(chapterDtos);
@@ -348,7 +633,7 @@ public class BookService {
         return dto;
     }
     
-    private ChapterDto convertChapterToDto(Chapter chapter) {
+    private ChapterDto convertChapterToDto(Chapter chapter, BookStatsService.ChapterProgress progress) {
         ChapterDto dto = new ChapterDto();
         dto.setId(chapter.getId());
         dto.setTitle(chapter.getTitle());
@@ -359,12 +644,8 @@ public class BookService {
         dto.setUpdatedAt(chapter.getUpdatedAt());
         
         // Добавляем статистику предложений
-        long totalSentences = sentenceRepository.countByChapterId(chapter.getId());
-        long readySentences = sentenceRepository.countByChapterIdAndStatus(
-                chapter.getId(), SentenceStatus.READY);
-        
-        dto.setTotalSentences((int) totalSentences);
-        dto.setReadySentences((int) readySentences);
+        dto.setTotalSentences(progress != null ? (int) progress.totalSentences : 0);
+        dto.setReadySentences(progress != null ? (int) progress.readySentences : 0);
         
         return dto;
     }
@@ -381,6 +662,19 @@ public class BookService {
         return dto;
     }
     
+    /**
+     * Книга вместе со статистикой обработки
+     */
+    public static class BookWithStats {
+        public final BookDto book;
+        public final BookProcessingStats stats;
+        
+        public BookWithStats(BookDto book, BookProcessingStats stats) {
+            this.book = book;
+            this.stats = stats;
+        }
+    }
+    
     public static class BookProcessingStats {
         public final Long bookId;
         public final String bookTitle;
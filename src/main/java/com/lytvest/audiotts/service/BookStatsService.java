@@ -0,0 +1,400 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.model.enums.BookProcessingStatus;
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.repository.BookProgressRow;
+import com.lytvest.audiotts.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Статистика обработки книг.
+ *
+ * Счетчики предложений по статусам для каждой главы и книги хранятся в памяти и обновляются
+ * на каждом переходе статуса (после коммита транзакции), поэтому чтение статистики не обращается к БД.
+ * При старте счетчики строятся одним агрегирующим запросом; отдельно в БД они не хранятся.
+ *
+ * Перечитывание книги и применение переходов согласованы блокировкой: транзакция с переходами
+ * держит ее на чтение от начала коммита до применения своих изменений к счетчикам, перечитывание -
+ * на запись. Поэтому запрос перечитывания либо видит коммит вместе с уже примененными изменениями,
+ * либо не видит его, и тогда изменения применяются к новым счетчикам.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookStatsService {
+    
+    private static final int STATUS_COUNT = SentenceStatus.values().length;
+    
+    private final BookRepository bookRepository;
+    
+    private final ConcurrentSkipListMap<Long, BookCounters> books = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, ChapterCounters> chapters = new ConcurrentHashMap<>();
+    
+    // Чтение - применение переходов, запись - перечитывание счетчиков из БД
+    private final ReadWriteLock countersLock = new ReentrantReadWriteLock();
+    
+    /**
+     * Переход статуса предложения, ожидающий коммита
+     */
+    private record Transition(Long chapterId, SentenceStatus from, SentenceStatus to) {
+    }
+    
+    /**
+     * Число предложений главы: всего и готовых
+     */
+    public static class ChapterProgress {
+        public long totalSentences;
+        public long readySentences;
+    }
+    
+    private static class ChapterCounters {
+        final Long bookId;
+        volatile ChapterStatus status;
+        final AtomicLongArray sentences = new AtomicLongArray(STATUS_COUNT);
+        
+        ChapterCounters(Long bookId, ChapterStatus status) {
+            this.bookId = bookId;
+            this.status = status;
+        }
+    }
+    
+    private static class BookCounters {
+        final String title;
+        final Set<Long> chapterIds = ConcurrentHashMap.newKeySet();
+        final AtomicLongArray sentences = new AtomicLongArray(STATUS_COUNT);
+        
+        BookCounters(String title) {
+            this.title = title;
+        }
+    }
+    
+    /**
+     * Строит счетчики по текущему состоянию БД до запуска обработчиков очередей
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuild() {
+        Map<Long, BookCounters> loadedBooks = new HashMap<>();
+        Map<Long, ChapterCounters> loadedChapters = new HashMap<>();
+        countersLock.writeLock().lock();
+        try {
+            load(bookRepository.aggregateProgress(), loadedBooks, loadedChapters);
+            
+            books.clear();
+            chapters.clear();
+            books.putAll(loadedBooks);
+            chapters.putAll(loadedChapters);
+        } finally {
+            countersLock.writeLock().unlock();
+        }
+        log.info("Progress counters rebuilt: {} books, {} chapters", loadedBooks.size(), loadedChapters.size());
+    }
+    
+    /**
+     * Учитывает переход предложения главы из одного статуса в другой; вызывается в транзакции перехода
+     */
+    public void sentenceStatusChanged(Long chapterId, SentenceStatus from, SentenceStatus to) {
+        if (from == to) {
+            return;
+        }
+        Transition transition = new Transition(chapterId, from, to);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyTransitions(List.of(transition));
+            return;
+        }
+        
+        @SuppressWarnings("unchecked")
+        List<Transition> pending = (List<Transition>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransitionSynchronization(pending));
+        }
+        pending.add(transition);
+    }
+    
+    /**
+     * Применяет переходы транзакции после коммита, не пропуская между коммитом и применением перечитывание
+     */
+    private class TransitionSynchronization implements TransactionSynchronization {
+        private final List<Transition> transitions;
+        private boolean locked;
+        
+        TransitionSynchronization(List<Transition> transitions) {
+            this.transitions = transitions;
+        }
+        
+        @Override
+        public int getOrder() {
+            // Раньше остальных afterCommit: они могут перечитывать книгу, а блокировку на чтение уже держим
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+        
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            countersLock.readLock().lock();
+            locked = true;
+        }
+        
+        @Override
+        public void afterCommit() {
+            try {
+                applyTransitions(transitions);
+            } finally {
+                unlock();
+            }
+        }
+        
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(BookStatsService.this);
+            unlock();
+        }
+        
+        private void unlock() {
+            if (locked) {
+                locked = false;
+                countersLock.readLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Учитывает смену статуса главы (сборка готового аудио главы)
+     */
+    public void chapterStatusChanged(Long chapterId, ChapterStatus status) {
+        afterCommit(() -> {
+            ChapterCounters chapter = chapters.get(chapterId);
+            if (chapter != null) {
+                chapter.status = status;
+            }
+        });
+    }
+    
+    /**
+     * Все предложения главы готовы
+     */
+    public boolean isChapterComplete(Long chapterId) {
+        ChapterCounters chapter = chapters.get(chapterId);
+        if (chapter == null) {
+            return false;
+        }
+        long total = total(chapter.sentences);
+        return total > 0 && chapter.sentences.get(SentenceStatus.READY.ordinal()) == total;
+    }
+    
+    /**
+     * Перечитывает счетчики книги из БД после массовых изменений (загрузка, редакция, перезапуск)
+     */
+    public void bookChanged(Long bookId) {
+        afterCommit(() -> reloadBook(bookId));
+    }
+    
+    /**
+     * Удаляет счетчики книги
+     */
+    public void bookDeleted(Long bookId) {
+        afterCommit(() -> {
+            BookCounters book = books.remove(bookId);
+            if (book != null) {
+                book.chapterIds.forEach(chapters::remove);
+            }
+        });
+    }
+    
+    /**
+     * Получает статистику всех книг (в порядке id)
+     */
+    public Map<Long, BookService.BookProcessingStats> getAllBookStats() {
+        Map<Long, BookService.BookProcessingStats> result = new LinkedHashMap<>();
+        books.forEach((bookId, book) -> result.put(bookId, toStats(bookId, book)));
+        return result;
+    }
+    
+    /**
+     * Получает страницу статистики книг с заданным прогрессом (в порядке id)
+     */
+    public Page<BookService.BookProcessingStats> getBookStats(BookProcessingStatus status, Pageable pageable) {
+        List<BookService.BookProcessingStats> content = new ArrayList<>();
+        long from = pageable.isPaged() ? pageable.getOffset() : 0;
+        long to = pageable.isPaged() ? from + pageable.getPageSize() : Long.MAX_VALUE;
+        long matched = 0;
+        
+        for (Map.Entry<Long, BookCounters> entry : books.entrySet()) {
+            BookService.BookProcessingStats stats = toStats(entry.getKey(), entry.getValue());
+            if (!status.matches(stats.progressPercentage)) {
+                continue;
+            }
+            if (matched >= from && matched < to) {
+                content.add(stats);
+            }
+            matched++;
+        }
+        return new PageImpl<>(content, pageable, matched);
+    }
+    
+    /**
+     * Получает статистику одной книги
+     */
+    public BookService.BookProcessingStats getBookStats(Long bookId) {
+        BookCounters book = books.get(bookId);
+        if (book == null) {
+            throw new RuntimeException("Book not found");
+        }
+        return toStats(bookId, book);
+    }
+    
+    /**
+     * Получает прогресс по главам книги
+     */
+    public Map<Long, ChapterProgress> getChapterProgress(Long bookId) {
+        Map<Long, ChapterProgress> result = new HashMap<>();
+        BookCounters book = books.get(bookId);
+        if (book == null) {
+            return result;
+        }
+        for (Long chapterId : book.chapterIds) {
+            ChapterCounters chapter = chapters.get(chapterId);
+            if (chapter != null) {
+                ChapterProgress progress = new ChapterProgress();
+                progress.totalSentences = total(chapter.sentences);
+                progress.readySentences = chapter.sentences.get(SentenceStatus.READY.ordinal());
+                result.put(chapterId, progress);
+            }
+        }
+        return result;
+    }
+    
+    private void reloadBook(Long bookId) {
+        Map<Long, BookCounters> loadedBooks = new HashMap<>();
+        Map<Long, ChapterCounters> loadedChapters = new HashMap<>();
+        countersLock.writeLock().lock();
+        try {
+            load(bookRepository.aggregateProgressByBookId(bookId), loadedBooks, loadedChapters);
+            
+            BookCounters previous = loadedBooks.containsKey(bookId) ? books.put(bookId, loadedBooks.get(bookId)) : books.remove(bookId);
+            if (previous != null) {
+                previous.chapterIds.stream()
+                        .filter(chapterId -> !loadedChapters.containsKey(chapterId))
+                        .forEach(chapters::remove);
+            }
+            chapters.putAll(loadedChapters);
+        } finally {
+            countersLock.writeLock().unlock();
+        }
+    }
+    
+    private void applyTransitions(List<Transition> transitions) {
+        countersLock.readLock().lock();
+        try {
+            for (Transition transition : transitions) {
+                ChapterCounters chapter = chapters.get(transition.chapterId());
+                if (chapter == null) {
+                    // Книга удалена или еще не загружена; reloadBook учтет актуальное состояние
+                    continue;
+                }
+                chapter.sentences.decrementAndGet(transition.from().ordinal());
+                chapter.sentences.incrementAndGet(transition.to().ordinal());
+                
+                BookCounters book = books.get(chapter.bookId);
+                if (book != null) {
+                    book.sentences.decrementAndGet(transition.from().ordinal());
+                    book.sentences.incrementAndGet(transition.to().ordinal());
+                }
+            }
+        } finally {
+            countersLock.readLock().unlock();
+        }
+    }
+    
+    private static void load(List<BookProgressRow> rows, Map<Long, BookCounters> loadedBooks,
+                             Map<Long, ChapterCounters> loadedChapters) {
+        for (BookProgressRow row : rows) {
+            BookCounters book = loadedBooks.computeIfAbsent(row.getBookId(), id -> new BookCounters(row.getBookTitle()));
+            if (row.getChapterId() == null) {
+                continue;
+            }
+            
+            // Строк на главу столько, сколько у нее различных статусов предложений
+            ChapterCounters chapter = loadedChapters.computeIfAbsent(row.getChapterId(),
+                    id -> new ChapterCounters(row.getBookId(), row.getChapterStatus()));
+            book.chapterIds.add(row.getChapterId());
+            if (row.getSentenceStatus() != null) {
+                chapter.sentences.addAndGet(row.getSentenceStatus().ordinal(), row.getSentenceCount());
+                book.sentences.addAndGet(row.getSentenceStatus().ordinal(), row.getSentenceCount());
+            }
+        }
+    }
+    
+    private BookService.BookProcessingStats toStats(Long bookId, BookCounters book) {
+        long totalSentences = total(book.sentences);
+        long readySentences = book.sentences.get(SentenceStatus.READY.ordinal());
+        
+        int readyChapters = 0;
+        for (Long chapterId : book.chapterIds) {
+            ChapterCounters chapter = chapters.get(chapterId);
+            if (chapter != null && chapter.status == ChapterStatus.READY) {
+                readyChapters++;
+            }
+        }
+        
+        return BookService.BookProcessingStats.builder()
+                .bookId(bookId)
+                .bookTitle(book.title)
+                .totalChapters(book.chapterIds.size())
+                .readyChapters(readyChapters)
+                .totalSentences((int) totalSentences)
+                .readySentences((int) readySentences)
+                .progressPercentage(totalSentences > 0 ? (int) ((readySentences * 100) / totalSentences) : 0)
+                .build();
+    }
+    
+    private static long total(AtomicLongArray counters) {
+        long total = 0;
+        for (int i = 0; i < counters.length(); i++) {
+            total += counters.get(i);
+        }
+        return total;
+    }
+    
+    /**
+     * Счетчики меняются только после коммита, чтобы откат транзакции не искажал статистику
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,261 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3Layout;
+import com.lytvest.audiotts.service.queue.ChapterAssemblyTask;
+import com.lytvest.audiotts.service.queue.TaskDispatcher;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import com.lytvest.audiotts.service.storage.AudioStorage;
+import com.lytvest.audiotts.service.storage.PackedSegmentStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Готовое аудио глав.
+ *
+ * Когда последнее предложение главы становится READY, глава один раз склеивается в файл,
+ * получает статус READY и дальше отдается как обычный файл. Повторная обработка и новая редакция
+ * возвращают главу в IN_PROGRESS до новой сборки. При смене голоса предложения остаются READY со старым
+ * аудио, а глава - READY со старым файлом: она пересобирается на том же месте один раз, когда записано
+ * новое аудио последнего переозвучиваемого предложения.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChapterAudioService {
+
+    // Главы, все предложения которых готовы, но аудио главы еще не собрано
+    private static final String COMPLETE_CHAPTERS_SQL = "SELECT c.id FROM chapters c WHERE c.status <> 'READY' " +
+            "AND EXISTS (SELECT 1 FROM sentences s WHERE s.chapter_id = c.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM sentences s WHERE s.chapter_id = c.id AND s.status <> 'READY')";
+
+    // Глава становится READY, только если с начала сборки ее не меняли и все предложения по-прежнему готовы
+    private static final String MARK_READY_SQL = "UPDATE chapters SET status = ?, audio_file_path = ?, " +
+            "audio_size = ?, audio_crc32 = ?, updated_at = ? " +
+            "WHERE id = ? AND updated_at = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM sentences WHERE chapter_id = ? AND status <> ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskDispatcher taskDispatcher;
+    private final BookStatsService bookStatsService;
+    private final Mp3Assembler mp3Assembler;
+    private final AudioStorage audioStorage;
+    private final PackedSegmentStore packedSegmentStore;
+    private final ChapterPlaylistService chapterPlaylistService;
+
+    // Переозвучиваемые главы: id главы -> id предложения -> число задач TTS, которые еще не записали аудио
+    private final Map<Long, Map<Long, Integer>> revoicing = new HashMap<>();
+
+    /**
+     * Ставит в очередь сборку глав, которые были готовы к моменту остановки, но не успели собраться
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void assembleCompleteChapters() {
+        List<Long> chapterIds = jdbcTemplate.queryForList(COMPLETE_CHAPTERS_SQL, Long.class);
+        chapterIds.forEach(chapterId -> taskDispatcher.dispatch(new ChapterAssemblyTask(chapterId)));
+        if (!chapterIds.isEmpty()) {
+            log.info("Queued assembly of {} complete chapters", chapterIds.size());
+        }
+    }
+
+    /**
+     * Ставит в очередь сборку готовых, но не собранных глав книги (после коммита)
+     */
+    public void assembleCompleteChapters(Long bookId) {
+        jdbcTemplate.queryForList(COMPLETE_CHAPTERS_SQL + " AND c.book_id = ?", Long.class, bookId)
+                .forEach(chapterId -> taskDispatcher.dispatch(new ChapterAssemblyTask(chapterId)));
+    }
+
+    /**
+     * Ставит в очередь сборку глав, в которых последнее предложение стало READY
+     * (id главы -> предложения, ставшие READY); переозвучиваемая глава пересобирается, когда записано
+     * аудио всех ее переозвучиваемых предложений
+     */
+    public void sentencesReady(Map<Long, List<Long>> readySentences) {
+        readySentences.forEach((chapterId, sentenceIds) -> {
+            Boolean revoiced = revoiceLanded(chapterId, sentenceIds);
+            if (revoiced == null) {
+                if (bookStatsService.isChapterComplete(chapterId)) {
+                    taskDispatcher.dispatch(new ChapterAssemblyTask(chapterId));
+                }
+            } else if (revoiced) {
+                log.debug("Revoicing of chapter {} is complete, reassembling", chapterId);
+                taskDispatcher.dispatch(new ChapterAssemblyTask(chapterId, true));
+            }
+        });
+    }
+
+    /**
+     * Запоминает предложения, поставленные на переозвучку (id главы -> id предложений), после коммита.
+     * Вызывается до постановки задач TTS в той же транзакции: тогда аудио не может прийти раньше
+     */
+    public void revoiceStarted(Map<Long, List<Long>> sentencesByChapter) {
+        Runnable register = () -> {
+            synchronized (revoicing) {
+                sentencesByChapter.forEach((chapterId, sentenceIds) -> {
+                    Map<Long, Integer> pending = revoicing.computeIfAbsent(chapterId, id -> new HashMap<>());
+                    sentenceIds.forEach(sentenceId -> pending.merge(sentenceId, 1, Integer::sum));
+                });
+            }
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            register.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                register.run();
+            }
+        });
+    }
+
+    /**
+     * Переозвучка предложения не состоялась (предложение удалено или TTS не удался);
+     * если это было последнее ожидаемое предложение главы, глава пересобирается из того, что записано
+     */
+    public void revoiceSkipped(Long sentenceId) {
+        Long completed = null;
+        synchronized (revoicing) {
+            for (Map.Entry<Long, Map<Long, Integer>> chapter : revoicing.entrySet()) {
+                if (chapter.getValue().containsKey(sentenceId)) {
+                    if (Boolean.TRUE.equals(revoiceLanded(chapter.getKey(), List.of(sentenceId)))) {
+                        completed = chapter.getKey();
+                    }
+                    break;
+                }
+            }
+        }
+        if (completed != null) {
+            taskDispatcher.dispatch(new ChapterAssemblyTask(completed, true));
+        }
+    }
+
+    /**
+     * Учитывает записанное аудио переозвучки: null - глава не переозвучивается,
+     * true - записано последнее ожидаемое предложение главы
+     */
+    private Boolean revoiceLanded(Long chapterId, List<Long> sentenceIds) {
+        synchronized (revoicing) {
+            Map<Long, Integer> pending = revoicing.get(chapterId);
+            if (pending == null) {
+                return null;
+            }
+            sentenceIds.forEach(sentenceId -> pending.computeIfPresent(sentenceId, (id, tasks) -> tasks > 1 ? tasks - 1 : null));
+            if (!pending.isEmpty()) {
+                return false;
+            }
+            revoicing.remove(chapterId);
+            return true;
+        }
+    }
+
+    /**
+     * Склеивает аудио предложений главы в файл и отмечает главу как READY.
+     * Готовая глава пересобирается только по запросу reassemble: новый файл заменяет старый атомарно
+     */
+    public void assembleChapter(Long chapterId, boolean reassemble) throws IOException {
+        List<Map<String, Object>> chapter = jdbcTemplate.queryForList(
+                "SELECT status, updated_at FROM chapters WHERE id = ?", chapterId);
+        if (chapter.isEmpty() || (!reassemble && ChapterStatus.READY.name().equals(chapter.get(0).get("status")))) {
+            return;
+        }
+        Object version = chapter.get(0).get("updated_at");
+
+        List<AudioSegment> files = new ArrayList<>();
+        boolean complete = true;
+        for (Map<String, Object> sentence : jdbcTemplate.queryForList("SELECT status, audio_file_path, audio_offset, " +
+                "audio_length FROM sentences WHERE chapter_id = ? ORDER BY sentence_number", chapterId)) {
+            String path = (String) sentence.get("audio_file_path");
+            if (!SentenceStatus.READY.name().equals(sentence.get("status")) || path == null) {
+                complete = false;
+                break;
+            }
+            files.add(AudioSegment.of(path, toLong(sentence.get("audio_offset")), toLong(sentence.get("audio_length"))));
+        }
+        if (!complete || files.isEmpty()) {
+            log.debug("Chapter {} is not complete anymore, assembly skipped", chapterId);
+            return;
+        }
+
+        Mp3Layout layout = mp3Assembler.scan(files);
+        if (layout.isEmpty()) {
+            log.warn("Chapter {} has no audio frames, assembly skipped", chapterId);
+            return;
+        }
+
+        Path target = audioStorage.chapterPath(chapterId);
+        CRC32 crc = new CRC32();
+        long size = audioStorage.write(target, out -> mp3Assembler.write(layout, new CheckedOutputStream(out, crc)));
+
+        int updated = jdbcTemplate.update(MARK_READY_SQL, ChapterStatus.READY.name(), target.toString(), size, crc.getValue(),
+                Timestamp.valueOf(LocalDateTime.now()), chapterId, version, chapterId, SentenceStatus.READY.name());
+        if (updated == 0) {
+            log.debug("Chapter {} changed during assembly, result discarded", chapterId);
+            return;
+        }
+
+        bookStatsService.chapterStatusChanged(chapterId, ChapterStatus.READY);
+        log.info("Assembled audio for chapter {}: {} sentences, {} frames, {} bytes",
+                chapterId, files.size(), layout.getFrameCount(), size);
+
+        // Глава только что озвучена целиком: удобный момент убрать старые участки повторной озвучки
+        try {
+            packedSegmentStore.compactIfNeeded(chapterId);
+        } catch (IOException e) {
+            log.warn("Could not compact audio segment of chapter {}", chapterId, e);
+        }
+    }
+
+    /**
+     * Удаляет файлы аудио и сегменты глав после коммита (главы или книга удалены)
+     */
+    public void deleteAudio(Collection<Long> chapterIds) {
+        List<Long> deleted = List.copyOf(chapterIds);
+        List<Path> paths = deleted.stream().map(audioStorage::chapterPath).toList();
+        Runnable delete = () -> {
+            synchronized (revoicing) {
+                deleted.forEach(revoicing::remove);
+            }
+            chapterPlaylistService.forgetChapters(deleted);
+            paths.forEach(audioStorage::delete);
+            packedSegmentStore.deleteSegments(deleted);
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            delete.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                delete.run();
+            }
+        });
+    }
+
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+}
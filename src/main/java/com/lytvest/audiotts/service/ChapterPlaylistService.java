@@ -0,0 +1,230 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.dto.ChapterTimingDto;
+import com.lytvest.audiotts.dto.SentenceTimingDto;
+import com.lytvest.audiotts.service.audio.Id3TimestampTag;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3AudioInfo;
+import com.lytvest.audiotts.service.audio.Mp3FrameReader;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HLS плейлист главы из аудио предложений.
+ *
+ * В плейлист попадают готовые предложения от начала главы до первого неготового. Пока глава
+ * озвучивается, плейлист живой (без ENDLIST): клиент перечитывает его и подхватывает новые сегменты;
+ * когда готовы все предложения, плейлист закрывается. Уже выданные сегменты не меняются и не пропадают:
+ * если повторная обработка укоротила готовое начало главы или изменила длительность выданного сегмента,
+ * плейлист перезапускается - номер первого сегмента сдвигается за все выданные, а перед новыми
+ * сегментами ставится разрыв (EXT-X-DISCONTINUITY). Сегмент - аудио кадры предложения без тегов
+ * и Xing/Info кадра, перед которыми идет ID3 тег с временем начала сегмента в главе.
+ *
+ * Состояние живого плейлиста забывается, когда глава удалена или плейлист не перечитывали дольше
+ * app.hls.playlist-idle-timeout (глава сброшена повторной обработкой, а слушатель ушел).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChapterPlaylistService {
+
+    // Предложения главы до запрошенного включительно: время начала сегмента - сумма сэмплов предыдущих
+    private static final String SEGMENT_SQL = "SELECT id, audio_file_path, audio_offset, audio_length, " +
+            "audio_samples, audio_sample_rate, audio_frame_bytes FROM sentences WHERE chapter_id = ? " +
+            "AND sentence_number <= (SELECT sentence_number FROM sentences WHERE id = ? AND chapter_id = ?) " +
+            "ORDER BY sentence_number";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChapterTimingService chapterTimingService;
+    private final Mp3Assembler mp3Assembler;
+
+    @Value("${app.hls.target-duration}")
+    private int targetDuration;
+
+    @Value("${app.hls.playlist-idle-timeout:600}")
+    private long playlistIdleTimeoutSeconds;
+
+    // Выданные живые плейлисты глав; закрытый, удаленный или заброшенный плейлист забывается
+    private final Map<Long, PlaylistState> playlists = new ConcurrentHashMap<>();
+
+    /**
+     * Выданная версия живого плейлиста
+     */
+    private record PlaylistState(long mediaSequence, long discontinuitySequence, boolean discontinuity,
+                                 List<String> segments, long accessedAt) {
+
+        /**
+         * Следующая версия: дописывает сегменты или перезапускает плейлист, если выданные изменились
+         */
+        PlaylistState next(List<String> current, long now) {
+            if (current.size() >= segments.size() && current.subList(0, segments.size()).equals(segments)) {
+                return new PlaylistState(mediaSequence, discontinuitySequence, discontinuity, current, now);
+            }
+            return new PlaylistState(mediaSequence + segments.size(), discontinuitySequence + (discontinuity ? 1 : 0),
+                    true, current, now);
+        }
+    }
+
+    /**
+     * Сегмент плейлиста: ID3 тег с временем начала и аудио кадры предложения
+     */
+    public static class HlsSegment {
+        private final AudioSegment audio;
+        private final byte[] tag;
+        private final long frameBytes;
+
+        HlsSegment(AudioSegment audio, byte[] tag, long frameBytes) {
+            this.audio = audio;
+            this.tag = tag;
+            this.frameBytes = frameBytes;
+        }
+
+        public long length() {
+            return tag.length + frameBytes;
+        }
+
+        /**
+         * Пишет тег и кадры; теги и Xing/Info кадр файла предложения пропускаются
+         */
+        public void write(OutputStream out) throws IOException {
+            out.write(tag);
+            try (Mp3FrameReader reader = new Mp3FrameReader(audio.open())) {
+                while (reader.nextFrame()) {
+                    reader.writeFrame(out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Собирает плейлист главы; сегменты - относительные ссылки segmentPrefix + id предложения + ".mp3"
+     */
+    public String buildPlaylist(Long chapterId, String segmentPrefix) {
+        long now = System.currentTimeMillis();
+        long idleBefore = now - playlistIdleTimeoutSeconds * 1000;
+        playlists.values().removeIf(state -> state.accessedAt() < idleBefore);
+
+        ChapterTimingDto timing;
+        try {
+            timing = chapterTimingService.getTiming(chapterId);
+        } catch (RuntimeException e) {
+            playlists.remove(chapterId);
+            throw e;
+        }
+
+        List<String> current = timing.getSentences().stream()
+                .map(sentence -> sentence.getSentenceId() + ":" + sentence.getDurationMillis())
+                .toList();
+        PlaylistState[] state = new PlaylistState[1];
+        boolean[] live = new boolean[1];
+        playlists.compute(chapterId, (id, previous) -> {
+            live[0] = previous != null;
+            state[0] = previous != null ? previous.next(current, now) : new PlaylistState(0, 0, false, current, now);
+            if (previous != null && state[0].mediaSequence() != previous.mediaSequence()) {
+                log.debug("Playlist of chapter {} restarted at media sequence {}", chapterId, state[0].mediaSequence());
+            }
+            return timing.isComplete() ? null : state[0];
+        });
+
+        StringBuilder segments = new StringBuilder();
+        long maxDurationMillis = 0;
+        for (SentenceTimingDto sentence : timing.getSentences()) {
+            if (segments.isEmpty() && state[0].discontinuity()) {
+                segments.append("#EXT-X-DISCONTINUITY\n");
+            }
+            maxDurationMillis = Math.max(maxDurationMillis, sentence.getDurationMillis());
+            segments.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", sentence.getDurationMillis() / 1000.0))
+                    .append(segmentPrefix).append(sentence.getSentenceId()).append(".mp3\n");
+        }
+
+        // Целевая длительность не должна меняться, пока плейлист живой, поэтому берется с запасом
+        long target = Math.max(targetDuration, (maxDurationMillis + 999) / 1000);
+        StringBuilder playlist = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:").append(target).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(state[0].mediaSequence()).append('\n');
+        if (state[0].discontinuitySequence() > 0) {
+            playlist.append("#EXT-X-DISCONTINUITY-SEQUENCE:").append(state[0].discontinuitySequence()).append('\n');
+        }
+        // Тип плейлиста нельзя менять, а из живого перезапуск удаляет сегменты: VOD только для сразу готовой главы
+        if (timing.isComplete() && !live[0]) {
+            playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        }
+        playlist.append(segments);
+        if (timing.isComplete()) {
+            playlist.append("#EXT-X-ENDLIST\n");
+        }
+        return playlist.toString();
+    }
+
+    /**
+     * Забывает живые плейлисты удаленных глав
+     */
+    public void forgetChapters(Collection<Long> chapterIds) {
+        chapterIds.forEach(playlists::remove);
+    }
+
+    /**
+     * Получает сегмент плейлиста: подходит любое предложение главы с аудио, в том числе выданное
+     * в плейлисте до перезапуска
+     */
+    public HlsSegment getSegment(Long chapterId, Long sentenceId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SEGMENT_SQL, chapterId, sentenceId, chapterId);
+        if (rows.isEmpty()) {
+            throw new RuntimeException("Segment not found");
+        }
+        Map<String, Object> sentence = rows.get(rows.size() - 1);
+        String path = (String) sentence.get("audio_file_path");
+        if (path == null) {
+            throw new RuntimeException("Segment not found");
+        }
+        AudioSegment audio = AudioSegment.of(path, toLong(sentence.get("audio_offset")), toLong(sentence.get("audio_length")));
+        if (!audio.exists()) {
+            throw new RuntimeException("Segment not found");
+        }
+
+        // Сэмплы с начала главы в частоте первого предложения; неизмеренные предложения индекс времени
+        // дописывает при построении плейлиста, до запроса сегментов
+        long samples = 0;
+        int sampleRate = 0;
+        for (Map<String, Object> previous : rows.subList(0, rows.size() - 1)) {
+            Long previousSamples = toLong(previous.get("audio_samples"));
+            Long previousRate = toLong(previous.get("audio_sample_rate"));
+            if (previousSamples == null || previousRate == null) {
+                continue;
+            }
+            if (sampleRate == 0) {
+                sampleRate = previousRate.intValue();
+            }
+            samples += new Mp3AudioInfo(0, previousSamples, previousRate.intValue()).samplesAt(sampleRate);
+        }
+        long pts = sampleRate > 0 ? samples * Id3TimestampTag.PTS_CLOCK / sampleRate : 0;
+        Long frameBytes = toLong(sentence.get("audio_frame_bytes"));
+        if (frameBytes == null) {
+            try (InputStream in = audio.open()) {
+                frameBytes = mp3Assembler.measure(in).getFrameBytes();
+            } catch (IOException e) {
+                throw new RuntimeException("Segment not found", e);
+            }
+        }
+        return new HlsSegment(audio, Id3TimestampTag.toBytes(pts), frameBytes);
+    }
+
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+}
@@ -3,23 +3,29 @@ package com.lytvest.audiotts.service;
 import com.lytvest.audiotts.dto.ChapterDto;
 import com.lytvest.audiotts.model.entity.Chapter;
 import com.lytvest.audiotts.model.entity.Sentence;
+import com.lytvest.audiotts.model.enums.ChapterStatus;
 import com.lytvest.audiotts.model.enums.SentenceStatus;
 import com.lytvest.audiotts.repository.ChapterRepository;
 import com.lytvest.audiotts.repository.SentenceRepository;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3Layout;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import com.lytvest.audiotts.service.storage.StoredZipArchive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Service
 @RequiredArgsConstructor
@@ -28,6 +34,8 @@ public class ChapterService {
     
     private final ChapterRepository chapterRepository;
     private final SentenceRepository sentenceRepository;
+    private final BookStatsService bookStatsService;
+    private final Mp3Assembler mp3Assembler;
     
     @Value("${app.storage.audio-path}")
     private String audioStoragePath;
@@ -37,15 +45,37 @@ public class ChapterService {
      */
     public List<ChapterDto> getBookChapters(Long bookId) {
         List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
+        Map<Long, BookStatsService.ChapterProgress> progress = bookStatsService.getChapterProgress(bookId);
         return chapters.stream()
-                .map(this::convertToDto)
+                .map(chapter -> convertToDto(chapter, progress.get(chapter.getId())))
                 .collect(Collectors.toList());
     }
     
     /**
-     * Генерирует аудио файл главы (объединяет все предложения)
+     * Получает собранный файл аудио главы; пусто, если глава еще не готова
      */
-    public byte[] generateChapterAudio(Long chapterId) {
+    public Optional<Path> getChapterAudioFile(Long chapterId) {
+        Chapter chapter = chapterRepository.findById(chapterId)
+                .orElseThrow(() -> new RuntimeException("Chapter not found"));
+        return getChapterAudioFile(chapter);
+    }
+    
+    private Optional<Path> getChapterAudioFile(Chapter chapter) {
+        if (chapter.getStatus() != ChapterStatus.READY || chapter.getAudioFilePath() == null) {
+            return Optional.empty();
+        }
+        Path audioPath = Paths.get(chapter.getAudioFilePath());
+        if (!Files.exists(audioPath)) {
+            log.warn("Audio file of ready chapter {} not found: {}", chapter.getId(), audioPath);
+            return Optional.empty();
+        }
+        return Optional.of(audioPath);
+    }
+    
+    /**
+     * Подготавливает аудио главы: проверяет готовность предложений и сканирует кадры их файлов
+     */
+    public Mp3Layout prepareChapterAudio(Long chapterId) {
         try {
             Chapter chapter = chapterRepository.findById(chapterId)
                     .orElseThrow(() -> new RuntimeException("Chapter not found"));
@@ -66,70 +96,63 @@ public class ChapterService {
                         chapterId, sentences.size(), readySentences.size());
             }
             
-            // Простая конкатенация аудио файлов (в реальном проекте лучше использовать специальную библиотеку)
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            
-            for (Sentence sentence : readySentences) {
-                Path audioPath = Paths.get(sentence.getAudioFilePath());
-                if (Files.exists(audioPath)) {
-                    byte[] audioData = Files.readAllBytes(audioPath);
-                    outputStream.write(audioData);
-                } else {
-                    log.warn("Audio file not found for sentence {}: {}", sentence.getId(), sentence.getAudioFilePath());
-                }
-            }
-            
-            return outputStream.toByteArray();
+            return mp3Assembler.scan(readySentences.stream()
+                    .map(sentence -> AudioSegment.of(sentence.getAudioFilePath(),
+                            sentence.getAudioOffset(), sentence.getAudioLength()))
+                    .collect(Collectors.toList()));
             
         } catch (IOException e) {
-            log.error("Error generating chapter audio for chapter {}", chapterId, e);
+            log.error("Error preparing chapter audio for chapter {}", chapterId, e);
             throw new RuntimeException("Failed to generate chapter audio", e);
         }
     }
     
     /**
-     * Создает ZIP архив с аудио файлами всех глав книги
+     * Пишет аудио главы в поток: один Xing заголовок и кадры предложений без их тегов
      */
-    public byte[] generateBookZip(Long bookId) {
-        try {
-            List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
-            
-            if (chapters.isEmpty()) {
-                throw new RuntimeException("No chapters found for book");
+    public void writeChapterAudio(Mp3Layout layout, OutputStream outputStream) throws IOException {
+        mp3Assembler.write(layout, outputStream);
+    }
+    
+    /**
+     * Подготавливает ZIP архив книги из собранных файлов глав (без сжатия, размер известен заранее).
+     * Файлы глав открываются здесь, до отправки заголовков; архив закрывает тот, кто его пишет
+     */
+    public StoredZipArchive prepareBookZip(Long bookId) {
+        List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterNumber(bookId);
+        
+        if (chapters.isEmpty()) {
+            throw new RuntimeException("No chapters found for book");
+        }
+        
+        List<StoredZipArchive.Entry> entries = new ArrayList<>();
+        for (Chapter chapter : chapters) {
+            Optional<Path> chapterFile = getChapterAudioFile(chapter);
+            if (chapterFile.isEmpty() || chapter.getAudioSize() == null || chapter.getAudioCrc32() == null) {
+                log.debug("Chapter {} is not assembled yet, skipped in ZIP", chapter.getId());
+                continue;
             }
             
-            ByteArrayOutputStream zipOutput = new ByteArrayOutputStream();
-            try (ZipOutputStream zipStream = new ZipOutputStream(zipOutput)) {
-                
-                for (Chapter chapter : chapters) {
-                    try {
-                        byte[] chapterAudio = generateChapterAudio(chapter.getId());
-                        
-                        // Создаем запись в ZIP архиве
-                        String fileName = String.format("Chapter_%02d_%s.mp3", 
-                                chapter.getChapterNumber(), 
-                                sanitizeFileName(chapter.getTitle()));
-                        
-                        ZipEntry entry = new ZipEntry(fileName);
-                        zipStream.putNextEntry(entry);
-                        zipStream.write(chapterAudio);
-                        zipStream.closeEntry();
-                        
-                        log.debug("Added chapter {} to ZIP: {}", chapter.getChapterNumber(), fileName);
-                        
-                    } catch (Exception e) {
-                        log.warn("Failed to add chapter {} to ZIP: {}", chapter.getId(), e.getMessage());
-                        // Продолжаем с другими главами
-                    }
-                }
+            String fileName = String.format("Chapter_%02d_%s.mp3", 
+                    chapter.getChapterNumber(), 
+                    sanitizeFileName(chapter.getTitle()));
+            try {
+                entries.add(new StoredZipArchive.Entry(fileName, chapterFile.get(),
+                        chapter.getAudioSize(), chapter.getAudioCrc32(), chapter.getUpdatedAt()));
+            } catch (IOException e) {
+                // Файл удалили или пересобрали после чтения главы
+                log.warn("Audio file of chapter {} changed, skipped in ZIP: {}", chapter.getId(), e.getMessage());
             }
-            
-            return zipOutput.toByteArray();
-            
-        } catch (IOException e) {
-            log.error("Error generating book ZIP for book {}", bookId, e);
-            throw new RuntimeException("Failed to generate book ZIP", e);
         }
+        
+        if (entries.isEmpty()) {
+            throw new RuntimeException("No ready chapters found for book");
+        }
+        if (entries.size() != chapters.size()) {
+            log.warn("Book {} has {} chapters but only {} are ready for ZIP", bookId, chapters.size(), entries.size());
+        }
+        
+        return new StoredZipArchive(entries);
     }
     
     /**
@@ -146,7 +169,7 @@ public class ChapterService {
                 .replaceAll("\\s+", "_");
     }
     
-    private ChapterDto convertToDto(Chapter chapter) {
+    private ChapterDto convertToDto(Chapter chapter, BookStatsService.ChapterProgress progress) {
         ChapterDto dto = new ChapterDto();
         dto.setId(chapter.getId());
         dto.setTitle(chapter.getTitle());
@@ -157,12 +180,8 @@ public class ChapterService {
         dto.setUpdatedAt(chapter.getUpdatedAt());
         
         // Добавляем статистику предложений
-        long totalSentences = sentenceRepository.countByChapterId(chapter.getId());
-        long readySentences = sentenceRepository.countByChapterIdAndStatus(
-                chapter.getId(), SentenceStatus.READY);
-        
-        dto.setTotalSentences((int) totalSentences);
-        dto.setReadySentences((int) readySentences);
+        dto.setTotalSentences(progress != null ? (int) progress.totalSentences : 0);
+        dto.setReadySentences(progress != null ? (int) progress.readySentences : 0);
         
         return dto;
     }
@@ -0,0 +1,148 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.dto.ChapterTimingDto;
+import com.lytvest.audiotts.dto.SentenceTimingDto;
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3AudioInfo;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс времени главы для перехода к предложению.
+ *
+ * Длительность в сэмплах и объем кадров аудио предложения считаются по заголовкам MP3 кадров при
+ * сохранении и хранятся в строке предложения, поэтому индекс собирается одним запросом без чтения аудио.
+ * Начало предложения - сумма сэмплов предыдущих, переведенная в миллисекунды (округляется только сумма,
+ * поэтому ошибка не накапливается к концу главы); в собранном файле главы аудио предложений
+ * идет подряд после Xing/Info кадра, поэтому байтовое смещение - его размер плюс объем предыдущих кадров.
+ * Предложения, озвученные до появления колонок, измеряются при первом обращении и дописываются в БД.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChapterTimingService {
+
+    private static final String SENTENCES_SQL = "SELECT id, sentence_number, status, audio_file_path, audio_offset, " +
+            "audio_length, audio_samples, audio_sample_rate, audio_frame_bytes FROM sentences WHERE chapter_id = ? ORDER BY sentence_number";
+
+    private static final String BACKFILL_SQL = "UPDATE sentences SET audio_samples = ?, audio_sample_rate = ?, " +
+            "audio_frame_bytes = ? WHERE id = ? AND audio_file_path = ? AND audio_samples IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Mp3Assembler mp3Assembler;
+
+    /**
+     * Строит индекс готовых предложений от начала главы до первого неготового
+     */
+    public ChapterTimingDto getTiming(Long chapterId) {
+        List<Map<String, Object>> chapter = jdbcTemplate.queryForList(
+                "SELECT status, audio_size FROM chapters WHERE id = ?", chapterId);
+        if (chapter.isEmpty()) {
+            throw new RuntimeException("Chapter not found");
+        }
+        ChapterStatus status = ChapterStatus.valueOf((String) chapter.get(0).get("status"));
+        Long audioSize = status == ChapterStatus.READY ? toLong(chapter.get(0).get("audio_size")) : null;
+
+        List<SentenceTimingDto> sentences = new ArrayList<>();
+        List<Long> frameBytes = new ArrayList<>();
+        // Сэмплы с начала главы в частоте первого предложения
+        long samples = 0;
+        int sampleRate = 0;
+        long startMillis = 0;
+        boolean complete = true;
+        for (Map<String, Object> row : jdbcTemplate.queryForList(SENTENCES_SQL, chapterId)) {
+            Mp3AudioInfo info = audioInfo(row);
+            if (info == null) {
+                complete = false;
+                break;
+            }
+            SentenceTimingDto timing = new SentenceTimingDto();
+            timing.setSentenceId(toLong(row.get("id")));
+            timing.setSentenceNumber(((Number) row.get("sentence_number")).intValue());
+            if (sampleRate == 0) {
+                sampleRate = info.getSampleRate();
+            }
+            samples += info.samplesAt(sampleRate);
+            long endMillis = Mp3AudioInfo.millis(samples, sampleRate);
+            timing.setStartMillis(startMillis);
+            timing.setDurationMillis(endMillis - startMillis);
+            sentences.add(timing);
+            frameBytes.add(info.getFrameBytes());
+            startMillis = endMillis;
+        }
+
+        ChapterTimingDto dto = new ChapterTimingDto();
+        dto.setChapterId(chapterId);
+        dto.setStatus(status);
+        dto.setComplete(complete);
+        dto.setDurationMillis(startMillis);
+        dto.setAudioSize(audioSize);
+        dto.setSentences(sentences);
+        if (complete && audioSize != null) {
+            setByteOffsets(dto, frameBytes);
+        }
+        return dto;
+    }
+
+    /**
+     * Смещения предложений в собранном файле главы: перед аудио идет только Xing/Info кадр
+     */
+    private static void setByteOffsets(ChapterTimingDto dto, List<Long> frameBytes) {
+        long audioBytes = frameBytes.stream().mapToLong(Long::longValue).sum();
+        long offset = dto.getAudioSize() - audioBytes;
+        if (offset < 0) {
+            // Файл собран из другого аудио (глава менялась после сборки)
+            log.warn("Chapter {} audio size {} is smaller than its sentences audio {}",
+                    dto.getChapterId(), dto.getAudioSize(), audioBytes);
+            return;
+        }
+        for (int i = 0; i < frameBytes.size(); i++) {
+            SentenceTimingDto timing = dto.getSentences().get(i);
+            timing.setByteOffset(offset);
+            timing.setByteLength(frameBytes.get(i));
+            offset += frameBytes.get(i);
+        }
+    }
+
+    /**
+     * Длительность и объем кадров готового предложения (null, если аудио нет или оно не читается)
+     */
+    private Mp3AudioInfo audioInfo(Map<String, Object> row) {
+        String path = (String) row.get("audio_file_path");
+        if (!SentenceStatus.READY.name().equals(row.get("status")) || path == null) {
+            return null;
+        }
+        Long samples = toLong(row.get("audio_samples"));
+        Long sampleRate = toLong(row.get("audio_sample_rate"));
+        Long frameBytes = toLong(row.get("audio_frame_bytes"));
+        if (samples != null && sampleRate != null && frameBytes != null) {
+            return new Mp3AudioInfo(frameBytes, samples, sampleRate.intValue());
+        }
+
+        AudioSegment audio = AudioSegment.of(path, toLong(row.get("audio_offset")), toLong(row.get("audio_length")));
+        Mp3AudioInfo info;
+        try (InputStream in = audio.open()) {
+            info = mp3Assembler.measure(in);
+        } catch (IOException e) {
+            log.warn("Could not measure audio {} of sentence {}", audio, row.get("id"), e);
+            return null;
+        }
+        jdbcTemplate.update(BACKFILL_SQL, info.getSamples(), info.getSampleRate(), info.getFrameBytes(), row.get("id"), path);
+        return info;
+    }
+
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+}
@@ -6,39 +6,61 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
-import java.text.BreakIterator;
+import java.io.InputStream;
 import java.util.*;
-import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class Fb2ParserService {
     
-    private static final Pattern SENTENCE_PATTERN = Pattern.compile("[.!?]+\\s*");
+    // Имена body, которые содержат сноски и комментарии, а не основной текст
+    private static final Set<String> NOTES_BODY_NAMES = Set.of("notes", "comments");
+    
+    /**
+     * Глубина секции, которая становится главой (0 - только листовые секции)
+     */
+    @Value("${app.parser.section-depth}")
+    private int sectionDepth;
+    
+    private final SentenceSegmenter sentenceSegmenter;
+    private final TextChunker textChunker;
     
     public static class ParsedBook {
         public String title;
         public String author;
         public List<ParsedChapter> chapters = new ArrayList<>();
+        // Сколько предложений было бы извлечено повторно из вложенных секций
+        public int deduplicatedSentences;
     }
     
     public static class ParsedChapter {
         public String title;
         public int chapterNumber;
+        // Фрагменты для озвучки (короткие предложения склеены, длинные разбиты)
         public List<String> sentences = new ArrayList<>();
+        // Исходные предложения главы, из которых получен каждый фрагмент (по индексу sentences)
+        public List<TextChunker.Chunk> sources = new ArrayList<>();
     }
     
     /**
      * Парсит FB2 файл и извлекает структуру книги
      */
     public ParsedBook parseFb2File(byte[] fileContent) {
+        return parseFb2Stream(new ByteArrayInputStream(fileContent));
+    }
+    
+    /**
+     * Парсит FB2 из потока (например, распаковываемого из архива) без промежуточной копии текста
+     */
+    public ParsedBook parseFb2Stream(InputStream fileContent) {
         try {
-            String content = new String(fileContent, "UTF-8");
-            Document doc = Jsoup.parse(content, "", org.jsoup.parser.Parser.xmlParser());
+            // Кодировку определяет парсер по XML-декларации (FB2 нередко в windows-1251)
+            Document doc = Jsoup.parse(fileContent, null, "", org.jsoup.parser.Parser.xmlParser());
             
             ParsedBook book = new ParsedBook();
             
@@ -48,8 +70,8 @@ public class Fb2ParserService {
             // Извлекаем главы
             extractChapters(doc, book);
             
-            log.info("Parsed FB2 book: '{}' by {} with {} chapters", 
-                book.title, book.author, book.chapters.size());
+            log.info("Parsed FB2 book: '{}' by {} with {} chapters ({} duplicated sentences skipped)", 
+                book.title, book.author, book.chapters.size(), book.deduplicatedSentences);
             
             return book;
             
@@ -102,101 +124,172 @@ public class Fb2ParserService {
     }
     
     private void extractChapters(Document doc, ParsedBook book) {
-        // Ищем body элемент
-        Element body = doc.selectFirst("body");
-        if (body == null) {
+        // Основные body (примечания и комментарии не озвучиваем)
+        List<Element> bodies = new ArrayList<>();
+        for (Element body : doc.select("body")) {
+            if (NOTES_BODY_NAMES.contains(body.attr("name").toLowerCase())) {
+                log.debug("Skipping notes body '{}'", body.attr("name"));
+                continue;
+            }
+            bodies.add(body);
+        }
+        
+        if (bodies.isEmpty()) {
             log.warn("No body element found in FB2 file");
             return;
         }
         
-        // Ищем секции (главы)
-        Elements sections = body.select("section");
-        
-        if (sections.isEmpty()) {
-            // Если нет секций, создаем одну главу из всего содержимого body
-            ParsedChapter chapter = new ParsedChapter();
-            chapter.title = "Глава 1";
-            chapter.chapterNumber = 1;
-            extractSentencesFromElement(body, chapter);
+        // Обход DOM выполняем последовательно, собирая тексты параграфов по главам
+        List<ChapterDraft> drafts = new ArrayList<>();
+        for (Element body : bodies) {
+            List<Element> sections = childElements(body, "section");
             
-            if (!chapter.sentences.isEmpty()) {
-                book.chapters.add(chapter);
-            }
-        } else {
-            // Обрабатываем каждую секцию как главу
-            int chapterNumber = 1;
-            for (Element section : sections) {
-                ParsedChapter chapter = new ParsedChapter();
-                chapter.chapterNumber = chapterNumber++;
-                
-                // Извлекаем заголовок главы
-                Element title = section.selectFirst("title");
-                if (title != null) {
-                    chapter.title = title.text().trim();
-                } else {
-                    chapter.title = "Глава " + chapter.chapterNumber;
-                }
-                
-                // Извлекаем предложения
-                extractSentencesFromElement(section, chapter);
-                
-                if (!chapter.sentences.isEmpty()) {
-                    book.chapters.add(chapter);
+            if (sections.isEmpty()) {
+                // Если нет секций, создаем одну главу из всего содержимого body
+                drafts.add(draftOf(body, null));
+            } else {
+                // Обходим дерево секций: главой становится лист или секция на заданной глубине
+                for (Element section : sections) {
+                    collectChapters(section, 1, drafts);
                 }
             }
         }
+        
+        // Разбиение на предложения - самая дорогая часть, главы обрабатываются параллельно
+        sentenceSegmenter.forEachParallel(drafts, this::segmentChapter);
+        
+        for (ChapterDraft draft : drafts) {
+            if (draft.chapter.sentences.isEmpty()) {
+                continue;
+            }
+            ParsedChapter chapter = draft.chapter;
+            chapter.chapterNumber = book.chapters.size() + 1;
+            if (chapter.title == null) {
+                chapter.title = "Глава " + chapter.chapterNumber;
+            }
+            book.chapters.add(chapter);
+            book.deduplicatedSentences += draft.duplicatedSentences;
+        }
+        
+        if (book.deduplicatedSentences > 0) {
+            log.info("Section-tree extraction avoided {} duplicated sentences", book.deduplicatedSentences);
+        }
     }
     
-    private void extractSentencesFromElement(Element element, ParsedChapter chapter) {
-        // Извлекаем все параграфы
-        Elements paragraphs = element.select("p");
+    private void collectChapters(Element section, int depth, List<ChapterDraft> drafts) {
+        List<Element> subsections = childElements(section, "section");
         
-        for (Element paragraph : paragraphs) {
-            String text = paragraph.text().trim();
-            if (!text.isEmpty()) {
-                List<String> sentences = splitIntoSentences(text);
-                chapter.sentences.addAll(sentences);
+        if (subsections.isEmpty() || (sectionDepth > 0 && depth >= sectionDepth)) {
+            drafts.add(draftOf(section, section));
+            return;
+        }
+        
+        // Собственный текст секции до подсекций (заголовок, эпиграф, вступление)
+        ChapterDraft intro = new ChapterDraft(sectionTitle(section));
+        for (Element child : section.children()) {
+            if (!"section".equals(child.tagName())) {
+                addParagraphs(child.select("p"), intro);
             }
         }
+        drafts.add(intro);
+        
+        for (Element subsection : subsections) {
+            collectChapters(subsection, depth + 1, drafts);
+        }
+    }
+    
+    private ChapterDraft draftOf(Element element, Element section) {
+        ChapterDraft draft = new ChapterDraft(section != null ? sectionTitle(section) : null);
+        
+        // Извлекаем все параграфы
+        Elements paragraphs = element.select("p");
+        addParagraphs(paragraphs, draft);
         
         // Если нет параграфов, берем весь текст
         if (paragraphs.isEmpty()) {
             String text = element.text().trim();
             if (!text.isEmpty()) {
-                List<String> sentences = splitIntoSentences(text);
-                chapter.sentences.addAll(sentences);
+                draft.paragraphs.add(text);
+                draft.nesting.add(1);
             }
         }
+        return draft;
     }
     
-    private List<String> splitIntoSentences(String text) {
-        List<String> sentences = new ArrayList<>();
-        
-        // Используем BreakIterator для более точного разбиения на предложения
-        BreakIterator iterator = BreakIterator.getSentenceInstance(new Locale("ru"));
-        iterator.setText(text);
-        
-        int start = iterator.first();
-        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
-            String sentence = text.substring(start, end).trim();
+    private void addParagraphs(Elements paragraphs, ChapterDraft draft) {
+        for (Element paragraph : paragraphs) {
+            String text = paragraph.text().trim();
+            if (!text.isEmpty()) {
+                draft.paragraphs.add(text);
+                draft.nesting.add(sectionNesting(paragraph));
+            }
+        }
+    }
+    
+    private void segmentChapter(ChapterDraft draft) {
+        int sentenceNumber = 1;
+        for (int i = 0; i < draft.paragraphs.size(); i++) {
+            List<String> sentences = sentenceSegmenter.splitIntoSentences(draft.paragraphs.get(i));
             
-            // Фильтруем слишком короткие "предложения"
-            if (sentence.length() > 3 && !sentence.matches("^[\\s\\p{Punct}]*$")) {
-                sentences.add(sentence);
+            // Склеиваем и режем в пределах параграфа: в FB2 реплика одного говорящего - отдельный параграф
+            for (TextChunker.Chunk chunk : textChunker.chunkParagraph(sentences, sentenceNumber)) {
+                draft.chapter.sentences.add(chunk.text);
+                draft.chapter.sources.add(chunk);
+            }
+            sentenceNumber += sentences.size();
+            
+            // Плоский select("section") извлекал параграф по разу для каждой охватывающей секции
+            int nesting = draft.nesting.get(i);
+            if (nesting > 1) {
+                draft.duplicatedSentences += sentences.size() * (nesting - 1);
             }
         }
-        
-        // Если BreakIterator не сработал, используем простое разбиение
-        if (sentences.isEmpty()) {
-            String[] parts = SENTENCE_PATTERN.split(text);
-            for (String part : parts) {
-                String trimmed = part.trim();
-                if (trimmed.length() > 3) {
-                    sentences.add(trimmed);
-                }
+    }
+    
+    /**
+     * Собственный заголовок секции (не из вложенных секций)
+     */
+    private static String sectionTitle(Element section) {
+        for (Element title : childElements(section, "title")) {
+            String text = title.text().trim();
+            if (!text.isEmpty()) {
+                return text;
             }
         }
+        return null;
+    }
+    
+    private static int sectionNesting(Element element) {
+        int nesting = 0;
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
+            if ("section".equals(parent.tagName())) {
+                nesting++;
+            }
+        }
+        return nesting;
+    }
+    
+    private static List<Element> childElements(Element parent, String tagName) {
+        List<Element> result = new ArrayList<>();
+        for (Element child : parent.children()) {
+            if (tagName.equals(child.tagName())) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Глава в процессе разбора: тексты параграфов до разбиения на предложения
+     */
+    private static class ChapterDraft {
+        final ParsedChapter chapter = new ParsedChapter();
+        final List<String> paragraphs = new ArrayList<>();
+        final List<Integer> nesting = new ArrayList<>();
+        int duplicatedSentences;
         
-        return sentences;
+        ChapterDraft(String title) {
+            chapter.title = title;
+        }
     }
 }
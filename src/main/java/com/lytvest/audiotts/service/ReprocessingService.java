@@ -0,0 +1,234 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.dto.ReprocessResultDto;
+import com.lytvest.audiotts.dto.request.ReprocessRequest;
+import com.lytvest.audiotts.model.entity.CharacterBook;
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.ReprocessStage;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.repository.BookRepository;
+import com.lytvest.audiotts.repository.CharacterRepository;
+import com.lytvest.audiotts.service.queue.CharacterDeterminationTask;
+import com.lytvest.audiotts.service.queue.StressTask;
+import com.lytvest.audiotts.service.queue.TaskDispatcher;
+import com.lytvest.audiotts.service.queue.TtsTask;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Повторная обработка части книги.
+ *
+ * Сброс выполняется одним UPDATE по условию выборки (без загрузки сущностей), задачи для
+ * затронутых предложений строятся потоково из одного SELECT и ставятся в очереди после коммита.
+ * Сброс увеличивает поколение обработки предложений, поэтому задачи, поставленные до него, не
+ * запишут свой результат и не поставят следующих задач.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReprocessingService {
+
+    private static final int FETCH_SIZE = 500;
+
+    // Собранное аудио глав с затронутыми предложениями устаревает
+    private static final String INVALIDATE_CHAPTERS_SQL = "UPDATE chapters SET status = ?, audio_file_path = NULL, " +
+            "audio_size = NULL, audio_crc32 = NULL, updated_at = ? WHERE id IN (SELECT chapter_id FROM sentences WHERE ";
+
+    // Участок в сегменте главы становится мусором и убирается при уплотнении
+    private static final String CLEAR_AUDIO = "audio_file_path = NULL, audio_offset = NULL, audio_length = NULL, " +
+            "audio_samples = NULL, audio_sample_rate = NULL, audio_frame_bytes = NULL";
+
+    private static final String CHARACTER_VOICED = "character_id = ? AND text_with_stress IS NOT NULL";
+
+    private static final String NEXT_GENERATION_SQL = "UPDATE sentences SET " +
+            "processing_generation = processing_generation + 1 WHERE ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookRepository bookRepository;
+    private final CharacterRepository characterRepository;
+    private final TaskDispatcher taskDispatcher;
+    private final BookStatsService bookStatsService;
+    private final ChapterAudioService chapterAudioService;
+
+    /**
+     * Условие выборки предложений книги; поля без алиаса таблицы, чтобы подходить и для UPDATE
+     */
+    private static class Scope {
+        final StringBuilder where = new StringBuilder("chapter_id IN (SELECT id FROM chapters WHERE book_id = ?)");
+        final List<Object> args = new ArrayList<>();
+
+        Scope(Long bookId, ReprocessRequest request) {
+            args.add(bookId);
+            if (request.getChapterId() != null) {
+                and("chapter_id = ?", request.getChapterId());
+            }
+            if (request.getCharacterId() != null) {
+                and("character_id = ?", request.getCharacterId());
+            }
+            if (request.getStatus() != null) {
+                and("status = ?", request.getStatus().name());
+            }
+            if (request.getFromSentence() != null) {
+                and("sentence_number >= ?", request.getFromSentence());
+            }
+            if (request.getToSentence() != null) {
+                and("sentence_number <= ?", request.getToSentence());
+            }
+
+            // Этап можно начать, только если предыдущие уже выполнены
+            switch (request.getStage()) {
+                case FROM_STRESS -> where.append(" AND character_id IS NOT NULL");
+                case TTS_ONLY -> where.append(" AND text_with_stress IS NOT NULL");
+                default -> {
+                }
+            }
+        }
+
+        private void and(String condition, Object arg) {
+            where.append(" AND ").append(condition);
+            args.add(arg);
+        }
+    }
+
+    /**
+     * Перезапускает обработку выбранных предложений книги с заданного этапа
+     */
+    @Transactional
+    public ReprocessResultDto reprocess(Long bookId, ReprocessRequest request) {
+        if (!bookRepository.existsById(bookId)) {
+            throw new RuntimeException("Book not found");
+        }
+
+        ReprocessStage stage = request.getStage() != null ? request.getStage() : ReprocessStage.FROM_CHARACTER;
+        request.setStage(stage);
+        Scope scope = new Scope(bookId, request);
+
+        // Поколение - до задач: строки заблокированы до коммита, и задачи несут уже новое поколение.
+        // Задачи строим до сброса: он меняет статус, по которому может идти выборка
+        jdbcTemplate.update(NEXT_GENERATION_SQL + scope.where, scope.args.toArray());
+        int queued = dispatchTasks(bookId, stage, scope);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(INVALIDATE_CHAPTERS_SQL + scope.where + ")",
+                withLeading(scope.args, ChapterStatus.IN_PROGRESS.name(), now));
+
+        int reset = jdbcTemplate.update("UPDATE sentences SET " + resetColumns(stage) + ", updated_at = ? WHERE " +
+                scope.where, withLeading(scope.args, statusAfterReset(stage).name(), now));
+
+        if (reset != queued) {
+            log.warn("Reprocessing book {}: {} sentences reset, {} tasks queued", bookId, reset, queued);
+        }
+        bookStatsService.bookChanged(bookId);
+
+        ReprocessResultDto result = new ReprocessResultDto();
+        result.setBookId(bookId);
+        result.setStage(stage);
+        result.setSentencesReset(reset);
+        log.info("Reprocessing book {} from {}: {} sentences", bookId, stage, reset);
+        return result;
+    }
+
+    /**
+     * Переозвучивает предложения персонажа новым голосом, минуя определение персонажа и ударения.
+     * Статусы предложений и глав не меняются: до записи нового аудио отдается старое, а глава
+     * пересобирается, когда переозвучены все ее предложения
+     */
+    @Transactional
+    public int regenerateCharacterAudio(Long characterId, String voiceId) {
+        // Заполняется ниже; переозвучка регистрируется раньше задач TTS, чтобы аудио не пришло до нее
+        Map<Long, List<Long>> sentencesByChapter = new HashMap<>();
+        chapterAudioService.revoiceStarted(sentencesByChapter);
+
+        // Аудио прежним голосом, еще идущее в очереди TTS, не перезапишет новое
+        jdbcTemplate.update(NEXT_GENERATION_SQL + CHARACTER_VOICED, characterId);
+
+        int[] count = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id, chapter_id, text_with_stress, " +
+                    "processing_generation FROM sentences WHERE " + CHARACTER_VOICED + " ORDER BY id");
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setLong(1, characterId);
+            return statement;
+        }, rs -> {
+            Long sentenceId = rs.getLong("id");
+            sentencesByChapter.computeIfAbsent(rs.getLong("chapter_id"), id -> new ArrayList<>()).add(sentenceId);
+            taskDispatcher.dispatch(new TtsTask(sentenceId, rs.getString("text_with_stress"), voiceId, null,
+                    rs.getInt("processing_generation")));
+            count[0]++;
+        });
+
+        log.info("Queued {} sentences of character {} for voice {}", count[0], characterId, voiceId);
+        return count[0];
+    }
+
+    private int dispatchTasks(Long bookId, ReprocessStage stage, Scope scope) {
+        List<String> characterNames = stage == ReprocessStage.FROM_CHARACTER
+                ? characterRepository.findByBookId(bookId).stream().map(CharacterBook::getName).collect(Collectors.toList())
+                : List.of();
+
+        String sql = "SELECT s.id, s.original_text, s.text_with_stress, s.processing_generation, c.voice_id " +
+                "FROM sentences s LEFT JOIN characters c ON c.id = s.character_id " +
+                "WHERE s.id IN (SELECT id FROM sentences WHERE " + scope.where + ") ORDER BY s.id";
+
+        int[] count = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < scope.args.size(); i++) {
+                statement.setObject(i + 1, scope.args.get(i));
+            }
+            return statement;
+        }, rs -> {
+            Long sentenceId = rs.getLong("id");
+            int generation = rs.getInt("processing_generation");
+            switch (stage) {
+                case FROM_CHARACTER -> taskDispatcher.dispatch(new CharacterDeterminationTask(
+                        sentenceId, rs.getString("original_text"), characterNames, bookId, generation));
+                case FROM_STRESS -> taskDispatcher.dispatch(new StressTask(sentenceId, rs.getString("original_text"),
+                        generation));
+                case TTS_ONLY -> {
+                    String voiceId = rs.getString("voice_id");
+                    taskDispatcher.dispatch(new TtsTask(sentenceId, rs.getString("text_with_stress"),
+                            voiceId != null ? voiceId : "default", null, generation));
+                }
+            }
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private static String resetColumns(ReprocessStage stage) {
+        return switch (stage) {
+            case FROM_CHARACTER -> "status = ?, character_id = NULL, text_with_stress = NULL, " + CLEAR_AUDIO;
+            case FROM_STRESS -> "status = ?, text_with_stress = NULL, " + CLEAR_AUDIO;
+            case TTS_ONLY -> "status = ?, " + CLEAR_AUDIO;
+        };
+    }
+
+    private static SentenceStatus statusAfterReset(ReprocessStage stage) {
+        return switch (stage) {
+            case FROM_CHARACTER -> SentenceStatus.WAITING_FOR_CHARACTER;
+            case FROM_STRESS -> SentenceStatus.WAITING_FOR_STRESS;
+            case TTS_ONLY -> SentenceStatus.WAITING_FOR_TTS;
+        };
+    }
+
+    private static Object[] withLeading(List<Object> scopeArgs, Object... leading) {
+        List<Object> args = new ArrayList<>(leading.length + scopeArgs.size());
+        args.addAll(List.of(leading));
+        args.addAll(scopeArgs);
+        return args.toArray();
+    }
+}
@@ -2,30 +2,48 @@ package com.lytvest.audiotts.service;
 
 import com.lytvest.audiotts.dto.CharacterDto;
 import com.lytvest.audiotts.dto.SentenceDto;
+import com.lytvest.audiotts.dto.SentenceSummaryDto;
 import com.lytvest.audiotts.dto.request.CharacterUpdateRequest;
+import com.lytvest.audiotts.dto.response.SentencePageDto;
 import com.lytvest.audiotts.model.entity.CharacterBook;
 import com.lytvest.audiotts.model.entity.Sentence;
 import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.repository.BookRepository;
 import com.lytvest.audiotts.repository.CharacterRepository;
 import com.lytvest.audiotts.repository.SentenceRepository;
+import com.lytvest.audiotts.service.audio.Mp3Assembler;
+import com.lytvest.audiotts.service.audio.Mp3AudioInfo;
 import com.lytvest.audiotts.service.external.F5TtsService;
 import com.lytvest.audiotts.service.external.OllamaService;
-import com.lytvest.audiotts.service.queue.QueueService;
+import com.lytvest.audiotts.service.queue.CharacterDeterminationTask;
 import com.lytvest.audiotts.service.queue.StressTask;
+import com.lytvest.audiotts.service.queue.TaskDispatcher;
 import com.lytvest.audiotts.service.queue.TtsTask;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import com.lytvest.audiotts.service.storage.PackedSegmentStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,21 +51,52 @@ import java.util.stream.Collectors;
 @Slf4j
 public class SentenceProcessingService {
     
+    private static final int MAX_PAGE_SIZE = 500;
+    
+    private static final String SOURCE_RESULT_SQL = "SELECT s.text_with_stress, s.audio_file_path, s.audio_offset, " +
+            "s.audio_length, s.audio_samples, s.audio_sample_rate, s.audio_frame_bytes, c.name AS character_name, c.voice_id " +
+            "FROM sentences s LEFT JOIN characters c ON c.id = s.character_id " +
+            "WHERE s.id = ? AND s.status = 'READY' AND s.audio_file_path IS NOT NULL";
+    
+    private static final String FOLLOWERS_SQL = "SELECT s.id, s.status, s.original_text, s.text_with_stress, " +
+            "s.character_id, s.processing_generation, ch.book_id, c.voice_id FROM sentences s JOIN chapters ch ON ch.id = s.chapter_id " +
+            "LEFT JOIN characters c ON c.id = s.character_id WHERE s.id IN (:ids)";
+    
     private final SentenceRepository sentenceRepository;
     private final CharacterRepository characterRepository;
     private final OllamaService ollamaService;
     private final F5TtsService f5TtsService;
-    private final QueueService queueService;
+    private final TaskDispatcher taskDispatcher;
+    private final BookRepository bookRepository;
+    private final SentenceUpdateBuffer sentenceUpdateBuffer;
+    private final ReprocessingService reprocessingService;
+    private final PackedSegmentStore packedSegmentStore;
+    private final ChapterAudioService chapterAudioService;
+    private final Mp3Assembler mp3Assembler;
+    private final JdbcTemplate jdbcTemplate;
+    
+    // Кеш id персонажей: id книги -> имя -> id персонажа; книга забывается при удалении
+    private final Map<Long, Map<String, Long>> characterIds = new ConcurrentHashMap<>();
     
-    @Value("${app.storage.audio-path}")
-    private String audioStoragePath;
+    // Предложения копий книг, ждущие результата исходного предложения (id исходного -> id копий)
+    private final Map<Long, Set<Long>> cloneFollowers = new ConcurrentHashMap<>();
     
     /**
-     * Получает предложения по статусу
+     * Получает страницу предложений со статусом после заданного id (keyset пагинация по (status, id));
+     * размер страницы ограничивается от 1 до MAX_PAGE_SIZE
      */
-    public Page<SentenceDto> getSentencesByStatus(SentenceStatus status, Pageable pageable) {
-        Page<Sentence> sentences = sentenceRepository.findByStatus(status, pageable);
-        return sentences.map(this::convertToDto);
+    public SentencePageDto getSentencesByStatus(SentenceStatus status, long afterId, int requestedSize) {
+        int size = Math.max(1, Math.min(requestedSize, MAX_PAGE_SIZE));
+        // Берем на одну строку больше, чтобы понять, есть ли следующая страница
+        List<SentenceSummaryDto> sentences = sentenceRepository.findSummariesByStatusAfterId(status, afterId, Limit.of(size + 1));
+        
+        SentencePageDto page = new SentencePageDto();
+        if (sentences.size() > size) {
+            sentences = sentences.subList(0, size);
+            page.setNextAfterId(sentences.get(size - 1).getId());
+        }
+        page.setSentences(sentences);
+        return page;
     }
     
     /**
@@ -61,87 +110,281 @@ public class SentenceProcessingService {
     }
     
     /**
-     * Обновляет персонажа для предложения
+     * Обновляет персонажа для предложения; задача ударений ставится после записи в БД
      */
-    @Transactional
-    public void updateSentenceCharacter(Long sentenceId, String characterName) {
-        Sentence sentence = sentenceRepository.findById(sentenceId)
-                .orElseThrow(() -> new RuntimeException("Sentence not found"));
+    public CompletableFuture<Void> updateSentenceCharacter(CharacterDeterminationTask task, String characterName) {
+        Long characterId = resolveCharacterId(task.getBookId(), characterName);
         
-        // Ищем или создаем персонажа
-        CharacterBook characterBook = characterRepository
-                .findByBookIdAndName(sentence.getChapter().getBook().getId(), characterName)
-                .orElseGet(() -> {
-                    CharacterBook newCharacterBook = new CharacterBook();
-                    newCharacterBook.setBook(sentence.getChapter().getBook());
-                    newCharacterBook.setName(characterName);
-                    return characterRepository.save(newCharacterBook);
+        return sentenceUpdateBuffer.characterDetermined(task.getSentenceId(), task.getGeneration(), characterId)
+                .thenAccept(state -> {
+                    if (state == null) {
+                        resultDiscarded(task.getSentenceId());
+                        return;
+                    }
+                    // Добавляем задачу расстановки ударений в очередь
+                    taskDispatcher.dispatch(new StressTask(task.getSentenceId(), task.getText(), task.getGeneration()));
+                    log.info("Updated character for sentence {}: {}", task.getSentenceId(), characterName);
                 });
-        
-        sentence.setCharacter(characterBook);
-        sentence.setStatus(SentenceStatus.WAITING_FOR_STRESS);
-        sentenceRepository.save(sentence);
-        
-        // Добавляем задачу расстановки ударений в очередь
-        StressTask stressTask = new StressTask(sentenceId, sentence.getOriginalText());
-        queueService.addStressTask(stressTask);
-        
-        log.info("Updated character for sentence {}: {}", sentenceId, characterName);
     }
     
     /**
-     * Обновляет текст с ударениями
+     * Обновляет текст с ударениями; задача TTS ставится после записи в БД
      */
-    @Transactional
-    public void updateSentenceStress(Long sentenceId, String textWithStress) {
-        Sentence sentence = sentenceRepository.findById(sentenceId)
-                .orElseThrow(() -> new RuntimeException("Sentence not found"));
-        
-        sentence.setTextWithStress(textWithStress);
-        sentence.setStatus(SentenceStatus.WAITING_FOR_TTS);
-        sentenceRepository.save(sentence);
-        
-        // Добавляем задачу TTS в очередь
-        String voiceId = sentence.getCharacter() != null ? sentence.getCharacter().getVoiceId() : "default";
-        String outputPath = generateAudioPath(sentenceId);
-        
-        TtsTask ttsTask = new TtsTask(sentenceId, textWithStress, voiceId, outputPath);
-        queueService.addTtsTask(ttsTask);
-        
-        log.info("Updated stress for sentence {}", sentenceId);
+    public CompletableFuture<Void> updateSentenceStress(StressTask task, String textWithStress) {
+        Long sentenceId = task.getSentenceId();
+        return sentenceUpdateBuffer.stressAdded(sentenceId, task.getGeneration(), textWithStress)
+                .thenAccept(state -> {
+                    if (state == null) {
+                        resultDiscarded(sentenceId);
+                        return;
+                    }
+                    // Добавляем задачу TTS в очередь
+                    String voiceId = state.voiceId != null ? state.voiceId : "default";
+                    
+                    taskDispatcher.dispatch(new TtsTask(sentenceId, textWithStress, voiceId, null, task.getGeneration()));
+                    log.info("Updated stress for sentence {}", sentenceId);
+                });
     }
     
     /**
-     * Сохраняет аудио файл и обновляет статус предложения
+     * Дописывает аудио из файла в сегмент главы и обновляет статус предложения.
+     * Файл после возврата можно удалять: аудио уже скопировано в сегмент
      */
-    @Transactional
-    public void saveSentenceAudio(Long sentenceId, byte[] audioData) {
+    public CompletableFuture<Void> saveSentenceAudio(TtsTask task, Path audioFile) {
+        Long sentenceId = task.getSentenceId();
+        Long chapterId = sentenceRepository.findChapterIdById(sentenceId).orElse(null);
+        if (chapterId == null) {
+            log.debug("Sentence {} was deleted, audio discarded", sentenceId);
+            releaseFollowers(sentenceId);
+            chapterAudioService.revoiceSkipped(sentenceId);
+            return CompletableFuture.completedFuture(null);
+        }
+        
         try {
-            Sentence sentence = sentenceRepository.findById(sentenceId)
-                    .orElseThrow(() -> new RuntimeException("Sentence not found"));
-            
-            // Создаем директорию для аудио файлов
-            Path audioPath = Paths.get(audioStoragePath);
-            Files.createDirectories(audioPath);
-            
-            // Сохраняем аудио файл
-            String filename = "sentence_" + sentenceId + ".mp3";
-            Path filePath = audioPath.resolve(filename);
-            Files.write(filePath, audioData);
-            
-            // Обновляем предложение
-            sentence.setAudioFilePath(filePath.toString());
-            sentence.setStatus(SentenceStatus.READY);
-            sentenceRepository.save(sentence);
+            // Длительность считается по заголовкам кадров
+            Mp3AudioInfo audioInfo = mp3Assembler.measure(Files.newInputStream(audioFile));
             
-            log.info("Saved audio for sentence {}: {}", sentenceId, filename);
+            // Смещение пишется в БД после того, как аудио сброшено на диск
+            return packedSegmentStore.append(chapterId, audioFile,
+                            audio -> sentenceUpdateBuffer.audioSaved(sentenceId, task.getGeneration(), audio, audioInfo)
+                                    .thenAccept(state -> {
+                                        if (state == null) {
+                                            resultDiscarded(sentenceId);
+                                            chapterAudioService.revoiceSkipped(sentenceId);
+                                            return;
+                                        }
+                                        log.info("Saved audio for sentence {}: {} ({} ms)",
+                                                sentenceId, audio, audioInfo.getDurationMillis());
+                                        copyToFollowers(sentenceId);
+                                    }));
             
         } catch (IOException e) {
             log.error("Error saving audio for sentence {}", sentenceId, e);
+            chapterAudioService.revoiceSkipped(sentenceId);
             throw new RuntimeException("Failed to save audio", e);
         }
     }
     
+    /**
+     * Связывает незавершенные предложения копии книги с исходными (id копии -> id исходного предложения).
+     *
+     * Задачи исходных предложений уже в очередях, поэтому копия их не повторяет: когда исходное предложение
+     * становится READY, его персонаж, ударения и участок аудио переносятся в предложения копий. Если исходное
+     * предложение удалено раньше, предложения копий ставятся в очереди сами. Связи живут в памяти, как и
+     * очереди: после перезапуска незавершенные предложения обеих книг ставятся заново через restart.
+     */
+    public void followSourceSentences(Map<Long, Long> sourceByClone) {
+        if (sourceByClone.isEmpty()) {
+            return;
+        }
+        sourceByClone.forEach((cloneId, sourceId) ->
+                cloneFollowers.computeIfAbsent(sourceId, id -> ConcurrentHashMap.newKeySet()).add(cloneId));
+        
+        // Исходное предложение могло закончить обработку (или быть удалено) до коммита копии
+        Map<Long, String> sourceStatuses = new HashMap<>();
+        new NamedParameterJdbcTemplate(jdbcTemplate).query("SELECT id, status FROM sentences WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", new HashSet<>(sourceByClone.values())),
+                rs -> {
+                    sourceStatuses.put(rs.getLong("id"), rs.getString("status"));
+                });
+        for (Long sourceId : new HashSet<>(sourceByClone.values())) {
+            String status = sourceStatuses.get(sourceId);
+            if (status == null) {
+                releaseFollowers(sourceId);
+            } else if (SentenceStatus.READY.name().equals(status)) {
+                copyToFollowers(sourceId);
+            }
+        }
+    }
+    
+    /**
+     * Переносит результат готового исходного предложения в предложения копий
+     */
+    private void copyToFollowers(Long sourceId) {
+        Set<Long> followers = cloneFollowers.remove(sourceId);
+        if (followers == null) {
+            return;
+        }
+        List<Map<String, Object>> source = jdbcTemplate.queryForList(SOURCE_RESULT_SQL, sourceId);
+        if (source.isEmpty()) {
+            dispatchFollowers(followers);
+            return;
+        }
+        Map<String, Object> result = source.get(0);
+        String characterName = (String) result.get("character_name");
+        String sourceVoiceId = voiceOrDefault((String) result.get("voice_id"));
+        String textWithStress = (String) result.get("text_with_stress");
+        AudioSegment audio = AudioSegment.of((String) result.get("audio_file_path"),
+                toLong(result.get("audio_offset")), toLong(result.get("audio_length")));
+        Long samples = toLong(result.get("audio_samples"));
+        Long sampleRate = toLong(result.get("audio_sample_rate"));
+        Long frameBytes = toLong(result.get("audio_frame_bytes"));
+        Mp3AudioInfo audioInfo = samples != null && sampleRate != null && frameBytes != null
+                ? new Mp3AudioInfo(frameBytes, samples, sampleRate.intValue()) : null;
+        
+        for (Map<String, Object> follower : followerRows(followers)) {
+            Long followerId = toLong(follower.get("id"));
+            if (SentenceStatus.READY.name().equals(follower.get("status"))) {
+                continue;
+            }
+            Long characterId = characterName != null
+                    ? resolveCharacterId(toLong(follower.get("book_id")), characterName) : null;
+            String voiceId = characterId != null
+                    ? voiceOrDefault(characterRepository.findById(characterId).map(CharacterBook::getVoiceId).orElse(null))
+                    : voiceOrDefault((String) follower.get("voice_id"));
+            // Аудио общее, только если голос персонажа в копии тот же
+            boolean sameVoice = voiceId.equals(sourceVoiceId);
+            int generation = ((Number) follower.get("processing_generation")).intValue();
+            sentenceUpdateBuffer.copiedFromSource(followerId, generation, characterId, textWithStress,
+                            sameVoice ? audio : null, sameVoice ? audioInfo : null)
+                    .thenAccept(state -> {
+                        if (state == null) {
+                            resultDiscarded(followerId);
+                        } else if (sameVoice) {
+                            // Копия копии тоже могла ждать это предложение
+                            copyToFollowers(followerId);
+                        } else {
+                            taskDispatcher.dispatch(new TtsTask(followerId, textWithStress, voiceId, null, generation));
+                        }
+                    })
+                    .exceptionally(error -> {
+                        log.error("Failed to copy result of sentence {} to {}", sourceId, followerId, error);
+                        return null;
+                    });
+        }
+        log.debug("Copied result of sentence {} to {} cloned sentences", sourceId, followers.size());
+    }
+    
+    /**
+     * Результат задачи не записан. Если предложение удалено, предложения копий обрабатываются сами;
+     * если сброшено, результат устарел, а копии дождутся задачи нового поколения
+     */
+    private void resultDiscarded(Long sentenceId) {
+        if (sentenceRepository.existsById(sentenceId)) {
+            log.debug("Sentence {} was reset, stale result discarded", sentenceId);
+            return;
+        }
+        log.debug("Sentence {} was deleted, result discarded", sentenceId);
+        releaseFollowers(sentenceId);
+    }
+    
+    /**
+     * Исходное предложение удалено: предложения копий обрабатываются сами
+     */
+    private void releaseFollowers(Long sourceId) {
+        Set<Long> followers = cloneFollowers.remove(sourceId);
+        if (followers != null) {
+            dispatchFollowers(followers);
+        }
+    }
+    
+    /**
+     * Ставит предложения в очередь той стадии, до которой они дошли
+     */
+    private void dispatchFollowers(Set<Long> followers) {
+        for (Map<String, Object> follower : followerRows(followers)) {
+            Long sentenceId = toLong(follower.get("id"));
+            String textWithStress = (String) follower.get("text_with_stress");
+            int generation = ((Number) follower.get("processing_generation")).intValue();
+            if (SentenceStatus.READY.name().equals(follower.get("status"))) {
+                continue;
+            }
+            if (textWithStress != null && follower.get("character_id") != null) {
+                taskDispatcher.dispatch(new TtsTask(sentenceId, textWithStress,
+                        voiceOrDefault((String) follower.get("voice_id")), null, generation));
+            } else if (follower.get("character_id") != null) {
+                taskDispatcher.dispatch(new StressTask(sentenceId, (String) follower.get("original_text"), generation));
+            } else {
+                Long bookId = toLong(follower.get("book_id"));
+                List<String> characterNames = characterRepository.findByBookId(bookId).stream()
+                        .map(CharacterBook::getName)
+                        .collect(Collectors.toList());
+                taskDispatcher.dispatch(new CharacterDeterminationTask(
+                        sentenceId, (String) follower.get("original_text"), characterNames, bookId, generation));
+            }
+        }
+    }
+    
+    private List<Map<String, Object>> followerRows(Set<Long> followers) {
+        return new NamedParameterJdbcTemplate(jdbcTemplate).queryForList(FOLLOWERS_SQL,
+                new MapSqlParameterSource("ids", followers));
+    }
+    
+    private static String voiceOrDefault(String voiceId) {
+        return voiceId != null ? voiceId : "default";
+    }
+    
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+    
+    /**
+     * Находит или создает персонажа книги (id кешируются, чтобы не ходить в БД на каждое предложение)
+     */
+    private Long resolveCharacterId(Long bookId, String characterName) {
+        Map<String, Long> bookCharacters = characterIds.get(bookId);
+        Long cached = bookCharacters != null ? bookCharacters.get(characterName) : null;
+        if (cached != null) {
+            return cached;
+        }
+        // Запросы в БД - вне блокировки кеша; одновременно созданного персонажа находит createCharacter
+        Long characterId = characterRepository.findByBookIdAndName(bookId, characterName)
+                .orElseGet(() -> createCharacter(bookId, characterName))
+                .getId();
+        Long previous = characterIds.computeIfAbsent(bookId, id -> new ConcurrentHashMap<>())
+                .putIfAbsent(characterName, characterId);
+        return previous != null ? previous : characterId;
+    }
+    
+    /**
+     * Забывает кешированные id персонажей книги после коммита (книга удалена)
+     */
+    public void forgetBookCharacters(Long bookId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            characterIds.remove(bookId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                characterIds.remove(bookId);
+            }
+        });
+    }
+    
+    private CharacterBook createCharacter(Long bookId, String characterName) {
+        CharacterBook newCharacterBook = new CharacterBook();
+        newCharacterBook.setBook(bookRepository.getReferenceById(bookId));
+        newCharacterBook.setName(characterName);
+        try {
+            return characterRepository.save(newCharacterBook);
+        } catch (DataIntegrityViolationException e) {
+            // Персонажа уже создали параллельно (уникальность book_id + name)
+            return characterRepository.findByBookIdAndName(bookId, characterName)
+                    .orElseThrow(() -> e);
+        }
+    }
+    
     /**
      * Обновляет настройки персонажа
      */
@@ -150,14 +393,26 @@ public class SentenceProcessingService {
         CharacterBook characterBook = characterRepository.findById(characterId)
                 .orElseThrow(() -> new RuntimeException("Character not found"));
         
+        String previousVoiceId = characterBook.getVoiceId();
         characterBook.setVoiceId(request.getVoiceId());
         characterBook.setVoiceName(request.getVoiceName());
         characterBook.setDescription(request.getDescription());
         
         characterBook = characterRepository.save(characterBook);
         
+        // Имя персонажа могло измениться: кеш заново найдет его по имени
+        Map<String, Long> bookCharacters = characterIds.get(characterBook.getBook().getId());
+        if (bookCharacters != null) {
+            bookCharacters.values().remove(characterId);
+        }
+        
         log.info("Updated character {}: voice={}", characterBook.getName(), request.getVoiceId());
         
+        // Новый голос: переозвучиваем уже обработанные предложения персонажа (после коммита)
+        if (!Objects.equals(previousVoiceId, request.getVoiceId())) {
+            reprocessingService.regenerateCharacterAudio(characterId, request.getVoiceId());
+        }
+        
         return convertCharacterToDto(characterBook);
     }
     
@@ -172,38 +427,30 @@ public class SentenceProcessingService {
     }
     
     /**
-     * Скачивает аудио файл предложения
+     * Получает аудио предложения
      */
-    public byte[] downloadSentenceAudio(Long sentenceId) {
-        try {
-            Sentence sentence = sentenceRepository.findById(sentenceId)
-                    .orElseThrow(() -> new RuntimeException("Sentence not found"));
-            
-            if (sentence.getAudioFilePath() == null) {
-                throw new RuntimeException("Audio file not available");
-            }
-            
-            Path filePath = Paths.get(sentence.getAudioFilePath());
-            if (!Files.exists(filePath)) {
-                throw new RuntimeException("Audio file not found");
-            }
-            
-            return Files.readAllBytes(filePath);
-            
-        } catch (IOException e) {
-            log.error("Error reading audio file for sentence {}", sentenceId, e);
-            throw new RuntimeException("Failed to read audio file", e);
+    public AudioSegment getSentenceAudio(Long sentenceId) {
+        Sentence sentence = sentenceRepository.findById(sentenceId)
+                .orElseThrow(() -> new RuntimeException("Sentence not found"));
+        
+        if (sentence.getAudioFilePath() == null) {
+            throw new RuntimeException("Audio file not available");
         }
-    }
-    
-    private String generateAudioPath(Long sentenceId) {
-        return Paths.get(audioStoragePath, "sentence_" + sentenceId + ".mp3").toString();
+        
+        AudioSegment audio = AudioSegment.of(sentence.getAudioFilePath(), sentence.getAudioOffset(), sentence.getAudioLength());
+        if (!audio.exists()) {
+            throw new RuntimeException("Audio file not found");
+        }
+        
+        return audio;
     }
     
     private SentenceDto convertToDto(Sentence sentence) {
         SentenceDto dto = new SentenceDto();
         dto.setId(sentence.getId());
         dto.setSentenceNumber(sentence.getSentenceNumber());
+        dto.setSourceSentenceNumber(sentence.getSourceSentenceNumber());
+        dto.setSourceSentenceCount(sentence.getSourceSentenceCount());
         dto.setOriginalText(sentence.getOriginalText());
         dto.setTextWithStress(sentence.getTextWithStress());
         dto.setStatus(sentence.getStatus());
@@ -0,0 +1,108 @@
+package com.lytvest.audiotts.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Разбиение текста на предложения на выделенном fork-join пуле
+ */
+@Service
+@Slf4j
+public class SentenceSegmenter {
+
+    private static final Locale RUSSIAN = new Locale("ru");
+
+    private static final Pattern SENTENCE_PATTERN = Pattern.compile("[.!?]+\\s*");
+
+    // Символы, которые \p{Punct} считает пунктуацией (только ASCII)
+    private static final String ASCII_PUNCT = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    // BreakIterator не потокобезопасен и дорог в создании, поэтому держим по одному на поток
+    private static final ThreadLocal<BreakIterator> SENTENCE_ITERATOR =
+            ThreadLocal.withInitial(() -> BreakIterator.getSentenceInstance(RUSSIAN));
+
+    private final ForkJoinPool pool;
+
+    public SentenceSegmenter(@Value("${app.parser.parallelism}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads);
+        log.info("Sentence segmentation pool started with {} threads", threads);
+    }
+
+    /**
+     * Выполняет действие для каждого элемента параллельно на пуле сегментации
+     */
+    public <T> void forEachParallel(List<T> items, Consumer<T> action) {
+        if (items.size() < 2 || pool.getParallelism() == 1) {
+            items.forEach(action);
+            return;
+        }
+        pool.submit(() -> items.parallelStream().forEach(action)).join();
+    }
+
+    /**
+     * Разбивает текст на предложения
+     */
+    public List<String> splitIntoSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+
+        BreakIterator iterator = SENTENCE_ITERATOR.get();
+        iterator.setText(text);
+
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            // Обрезаем пробелы по индексам, чтобы не создавать промежуточных строк
+            int from = start;
+            int to = end;
+            while (from < to && text.charAt(from) <= ' ') {
+                from++;
+            }
+            while (to > from && text.charAt(to - 1) <= ' ') {
+                to--;
+            }
+
+            // Фильтруем слишком короткие "предложения" и чистую пунктуацию
+            if (to - from > 3 && !isPunctuationOnly(text, from, to)) {
+                sentences.add(text.substring(from, to));
+            }
+        }
+
+        // Если BreakIterator не сработал, используем простое разбиение
+        if (sentences.isEmpty()) {
+            String[] parts = SENTENCE_PATTERN.split(text);
+            for (String part : parts) {
+                String trimmed = part.trim();
+                if (trimmed.length() > 3) {
+                    sentences.add(trimmed);
+                }
+            }
+        }
+
+        return sentences;
+    }
+
+    private static boolean isPunctuationOnly(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c) && ASCII_PUNCT.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,350 @@
+package com.lytvest.audiotts.service;
+
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import com.lytvest.audiotts.service.audio.Mp3AudioInfo;
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенная запись переходов статуса предложений.
+ *
+ * Обработчики очередей не ждут БД: обновления копятся в буфере и записываются пачкой
+ * (каждые flush-interval-ms или по batch-size строк) одним batch UPDATE в одной транзакции.
+ * Future обновления завершается только после коммита, поэтому следующая задача ставится
+ * в очередь, когда состояние предложения уже сохранено.
+ *
+ * Обновление записывается, только если поколение обработки предложения то же, с которым была
+ * поставлена задача: результат, пришедший после сброса предложения, отбрасывается. Если пачка
+ * не записалась, она повторяется, а затем пишется по одной строке, чтобы ошибка одной строки
+ * не отменила остальные.
+ */
+@Service
+@Slf4j
+public class SentenceUpdateBuffer {
+
+    private static final String UPDATE_SQL = "UPDATE sentences SET status = ?, " +
+            "character_id = COALESCE(?, character_id), " +
+            "text_with_stress = COALESCE(?, text_with_stress), " +
+            "audio_file_path = COALESCE(?, audio_file_path), " +
+            "audio_offset = COALESCE(?, audio_offset), " +
+            "audio_length = COALESCE(?, audio_length), " +
+            "audio_samples = COALESCE(?, audio_samples), " +
+            "audio_sample_rate = COALESCE(?, audio_sample_rate), " +
+            "audio_frame_bytes = COALESCE(?, audio_frame_bytes), " +
+            "updated_at = ? WHERE id = ? AND processing_generation = ?";
+
+    private static final String STATE_SQL = "SELECT s.id, s.chapter_id, s.status, s.processing_generation, c.voice_id " +
+            "FROM sentences s LEFT JOIN characters c ON c.id = s.character_id WHERE s.id IN (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BookStatsService bookStatsService;
+    private final ChapterAudioService chapterAudioService;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final BlockingQueue<SentenceUpdate> pending = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public SentenceUpdateBuffer(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                BookStatsService bookStatsService,
+                                ChapterAudioService chapterAudioService,
+                                @Value("${app.sentence-updates.batch-size}") int batchSize,
+                                @Value("${app.sentence-updates.flush-interval-ms}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.bookStatsService = bookStatsService;
+        this.chapterAudioService = chapterAudioService;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+
+        this.flusher = new Thread(this::run, "sentence-update-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Состояние предложения, прочитанное при записи обновления
+     */
+    public static class SentenceState {
+        public final Long chapterId;
+        public final SentenceStatus previousStatus;
+        // Голос персонажа предложения (null, если персонаж или голос не назначен)
+        public final String voiceId;
+
+        SentenceState(Long chapterId, SentenceStatus previousStatus, String voiceId) {
+            this.chapterId = chapterId;
+            this.previousStatus = previousStatus;
+            this.voiceId = voiceId;
+        }
+    }
+
+    private static class SentenceUpdate {
+        final Long sentenceId;
+        final int generation;
+        final SentenceStatus status;
+        final Long characterId;
+        final String textWithStress;
+        final AudioSegment audio;
+        final Mp3AudioInfo audioInfo;
+        final CompletableFuture<SentenceState> future = new CompletableFuture<>();
+
+        SentenceUpdate(Long sentenceId, int generation, SentenceStatus status, Long characterId, String textWithStress,
+                       AudioSegment audio, Mp3AudioInfo audioInfo) {
+            this.sentenceId = sentenceId;
+            this.generation = generation;
+            this.status = status;
+            this.characterId = characterId;
+            this.textWithStress = textWithStress;
+            this.audio = audio;
+            this.audioInfo = audioInfo;
+        }
+    }
+
+    /**
+     * Назначает персонажа и переводит предложение в WAITING_FOR_STRESS
+     */
+    public CompletableFuture<SentenceState> characterDetermined(Long sentenceId, int generation, Long characterId) {
+        return submit(new SentenceUpdate(sentenceId, generation, SentenceStatus.WAITING_FOR_STRESS, characterId,
+                null, null, null));
+    }
+
+    /**
+     * Сохраняет текст с ударениями и переводит предложение в WAITING_FOR_TTS
+     */
+    public CompletableFuture<SentenceState> stressAdded(Long sentenceId, int generation, String textWithStress) {
+        return submit(new SentenceUpdate(sentenceId, generation, SentenceStatus.WAITING_FOR_TTS, null, textWithStress,
+                null, null));
+    }
+
+    /**
+     * Сохраняет расположение и длительность аудио и переводит предложение в READY
+     */
+    public CompletableFuture<SentenceState> audioSaved(Long sentenceId, int generation, AudioSegment audio,
+                                                       Mp3AudioInfo audioInfo) {
+        return submit(new SentenceUpdate(sentenceId, generation, SentenceStatus.READY, null, null, audio, audioInfo));
+    }
+
+    /**
+     * Переносит в предложение копии книги результаты исходного предложения: с аудио - сразу READY,
+     * без аудио (голос копии другой) - WAITING_FOR_TTS
+     */
+    public CompletableFuture<SentenceState> copiedFromSource(Long sentenceId, int generation, Long characterId,
+                                                             String textWithStress, AudioSegment audio,
+                                                             Mp3AudioInfo audioInfo) {
+        SentenceStatus status = audio != null ? SentenceStatus.READY : SentenceStatus.WAITING_FOR_TTS;
+        return submit(new SentenceUpdate(sentenceId, generation, status, characterId, textWithStress, audio, audioInfo));
+    }
+
+    /**
+     * Future завершается после коммита; значение null означает, что предложение уже удалено
+     * или сброшено (поколение обработки изменилось) и обновление не записано
+     */
+    private CompletableFuture<SentenceState> submit(SentenceUpdate update) {
+        if (!running) {
+            update.future.completeExceptionally(new IllegalStateException("Sentence update buffer is stopped"));
+            return update.future;
+        }
+        pending.add(update);
+        return update.future;
+    }
+
+    private void run() {
+        List<SentenceUpdate> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                SentenceUpdate first = pending.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Даем пачке набраться, но не дольше интервала сброса
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.nanoTime();
+                    SentenceUpdate next = wait > 0 ? pending.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        pending.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                pending.drainTo(batch);
+                flush(batch);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in sentence update flusher", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<SentenceUpdate> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Несколько обновлений одного предложения в пачке сливаются в одно
+        Map<Long, SentenceUpdate> merged = new LinkedHashMap<>();
+        for (SentenceUpdate update : batch) {
+            merged.merge(update.sentenceId, update, SentenceUpdateBuffer::mergeUpdates);
+        }
+
+        Map<Long, SentenceState> states = new HashMap<>();
+        Map<Long, RuntimeException> failures = new HashMap<>();
+        try {
+            states.putAll(writeInTransaction(merged.values()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} sentence updates, retrying", merged.size(), e);
+            try {
+                states.putAll(writeInTransaction(merged.values()));
+            } catch (RuntimeException retryError) {
+                // Пишем по одной строке: ошибку получат только обновления строк, которые не записались
+                log.error("Failed to write {} sentence updates, writing them one by one", merged.size(), retryError);
+                for (SentenceUpdate update : merged.values()) {
+                    try {
+                        states.putAll(writeInTransaction(List.of(update)));
+                    } catch (RuntimeException rowError) {
+                        log.error("Failed to write update of sentence {}", update.sentenceId, rowError);
+                        failures.put(update.sentenceId, rowError);
+                    }
+                }
+            }
+        }
+
+        Map<Long, List<Long>> readySentences = new HashMap<>();
+        for (SentenceUpdate update : merged.values()) {
+            SentenceState state = states.get(update.sentenceId);
+            if (state != null && update.status == SentenceStatus.READY) {
+                readySentences.computeIfAbsent(state.chapterId, id -> new ArrayList<>()).add(update.sentenceId);
+            }
+        }
+        chapterAudioService.sentencesReady(readySentences);
+
+        for (SentenceUpdate update : batch) {
+            RuntimeException failure = failures.get(update.sentenceId);
+            if (failure != null) {
+                update.future.completeExceptionally(failure);
+            } else {
+                // Обновление прошлого поколения, вытесненное в пачке обновлением нового, не записано
+                boolean written = merged.get(update.sentenceId).generation == update.generation;
+                update.future.complete(written ? states.get(update.sentenceId) : null);
+            }
+        }
+        log.debug("Flushed {} sentence updates ({} rows)", batch.size(), merged.size());
+    }
+
+    /**
+     * Записывает обновления в одной транзакции; возвращает состояния записанных строк
+     */
+    private Map<Long, SentenceState> writeInTransaction(Collection<SentenceUpdate> updates) {
+        return transactionTemplate.execute(status -> {
+            Map<Long, SentenceState> written = write(updates);
+            // Счетчики применят переходы сразу после коммита, не пропустив вперед перечитывание книги
+            for (SentenceUpdate update : updates) {
+                SentenceState state = written.get(update.sentenceId);
+                if (state != null) {
+                    bookStatsService.sentenceStatusChanged(state.chapterId, state.previousStatus, update.status);
+                }
+            }
+            return written;
+        });
+    }
+
+    private Map<Long, SentenceState> write(Collection<SentenceUpdate> updates) {
+        // Состояние до обновления нужно для счетчиков прогресса; удаленные и сброшенные предложения пропускаем
+        Map<Long, SentenceState> states = new HashMap<>();
+        Map<Long, Integer> generations = new HashMap<>();
+        Set<Long> ids = updates.stream().map(update -> update.sentenceId).collect(Collectors.toSet());
+        namedJdbcTemplate.query(STATE_SQL, new MapSqlParameterSource("ids", ids), rs -> {
+            states.put(rs.getLong("id"), new SentenceState(rs.getLong("chapter_id"),
+                    SentenceStatus.valueOf(rs.getString("status")), rs.getString("voice_id")));
+            generations.put(rs.getLong("id"), rs.getInt("processing_generation"));
+        });
+
+        List<SentenceUpdate> current = new ArrayList<>(states.size());
+        List<Object[]> rows = new ArrayList<>(states.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (SentenceUpdate update : updates) {
+            Integer generation = generations.get(update.sentenceId);
+            if (generation != null && generation == update.generation) {
+                current.add(update);
+                AudioSegment audio = update.audio;
+                rows.add(new Object[]{update.status.name(), update.characterId, update.textWithStress,
+                        audio != null ? audio.getPath().toString() : null,
+                        audio != null ? audio.getOffset() : null,
+                        audio != null ? audio.getLength() : null,
+                        update.audioInfo != null ? update.audioInfo.getSamples() : null,
+                        update.audioInfo != null ? update.audioInfo.getSampleRate() : null,
+                        update.audioInfo != null ? update.audioInfo.getFrameBytes() : null,
+                        now, update.sentenceId, update.generation});
+            }
+        }
+        if (current.size() < updates.size()) {
+            log.debug("Discarded {} updates of deleted or reset sentences", updates.size() - current.size());
+        }
+
+        // Поколение проверяется и в UPDATE: сброс мог закоммититься после чтения состояния
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+        Map<Long, SentenceState> written = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                written.put(current.get(i).sentenceId, states.get(current.get(i).sentenceId));
+            }
+        }
+        return written;
+    }
+
+    private static SentenceUpdate mergeUpdates(SentenceUpdate earlier, SentenceUpdate later) {
+        // Обновления разных поколений не сливаются: остается обновление нового поколения
+        if (earlier.generation != later.generation) {
+            return earlier.generation > later.generation ? earlier : later;
+        }
+        return new SentenceUpdate(later.sentenceId, later.generation, later.status,
+                later.characterId != null ? later.characterId : earlier.characterId,
+                later.textWithStress != null ? later.textWithStress : earlier.textWithStress,
+                later.audio != null ? later.audio : earlier.audio,
+                later.audio != null ? later.audioInfo : earlier.audioInfo);
+    }
+
+    /**
+     * Записывает накопленные обновления перед остановкой
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
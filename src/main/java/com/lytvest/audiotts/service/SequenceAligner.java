@@ -0,0 +1,114 @@
+package com.lytvest.audiotts.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Выравнивание двух последовательностей (старая и новая редакция) по наибольшей общей подпоследовательности
+ */
+public final class SequenceAligner {
+
+    // Предел размера таблицы LCS для изменившейся середины; дальше считаем середину замененной целиком
+    private static final long MAX_LCS_CELLS = 4_000_000L;
+
+    private SequenceAligner() {
+    }
+
+    /**
+     * Для каждого элемента старой последовательности возвращает индекс совпавшего элемента новой или -1
+     */
+    public static <T> int[] align(List<T> oldItems, List<T> newItems) {
+        int[] match = new int[oldItems.size()];
+        Arrays.fill(match, -1);
+
+        // Правки обычно точечные: отрезаем общие начало и конец
+        int prefix = 0;
+        while (prefix < oldItems.size() && prefix < newItems.size()
+                && Objects.equals(oldItems.get(prefix), newItems.get(prefix))) {
+            match[prefix] = prefix;
+            prefix++;
+        }
+
+        int oldEnd = oldItems.size();
+        int newEnd = newItems.size();
+        while (oldEnd > prefix && newEnd > prefix
+                && Objects.equals(oldItems.get(oldEnd - 1), newItems.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+            match[oldEnd] = newEnd;
+        }
+
+        int n = oldEnd - prefix;
+        int m = newEnd - prefix;
+        if (n == 0 || m == 0 || (long) (n + 1) * (m + 1) > MAX_LCS_CELLS) {
+            return match;
+        }
+
+        // lcs[i][j] - длина LCS суффиксов old[prefix + i..] и new[prefix + j..]
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                if (Objects.equals(oldItems.get(prefix + i), newItems.get(prefix + j))) {
+                    lcs[i][j] = lcs[i + 1][j + 1] + 1;
+                } else {
+                    lcs[i][j] = Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (Objects.equals(oldItems.get(prefix + i), newItems.get(prefix + j))) {
+                match[prefix + i] = prefix + j;
+                i++;
+                j++;
+            } else if (lcs[i + 1][j] >= lcs[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Участок между совпадениями: старые элементы [oldFrom, oldTo) заменены новыми [newFrom, newTo)
+     */
+    public static class Hunk {
+        public final int oldFrom;
+        public final int oldTo;
+        public final int newFrom;
+        public final int newTo;
+
+        Hunk(int oldFrom, int oldTo, int newFrom, int newTo) {
+            this.oldFrom = oldFrom;
+            this.oldTo = oldTo;
+            this.newFrom = newFrom;
+            this.newTo = newTo;
+        }
+    }
+
+    /**
+     * Разбивает результат align на участки изменений (пустые участки не возвращаются)
+     */
+    public static List<Hunk> hunks(int[] match, int newSize) {
+        List<Hunk> hunks = new ArrayList<>();
+        int oldFrom = 0;
+        int newFrom = 0;
+        for (int i = 0; i <= match.length; i++) {
+            if (i < match.length && match[i] < 0) {
+                continue;
+            }
+            int newTo = i < match.length ? match[i] : newSize;
+            if (i > oldFrom || newTo > newFrom) {
+                hunks.add(new Hunk(oldFrom, i, newFrom, newTo));
+            }
+            oldFrom = i + 1;
+            newFrom = newTo + 1;
+        }
+        return hunks;
+    }
+}
@@ -0,0 +1,141 @@
+package com.lytvest.audiotts.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нарезка предложений на фрагменты оптимальной для TTS длины.
+ *
+ * Короткие соседние предложения одного параграфа (одного говорящего) склеиваются,
+ * слишком длинные делятся по границам придаточных (запятая, точка с запятой, двоеточие, тире).
+ */
+@Service
+@Slf4j
+public class TextChunker {
+
+    private final boolean enabled;
+    private final int minChars;
+    private final int maxChars;
+
+    public TextChunker(@Value("${app.chunking.enabled}") boolean enabled,
+                       @Value("${app.chunking.min-chars}") int minChars,
+                       @Value("${app.chunking.max-chars}") int maxChars,
+                       @Value("${app.chunking.max-seconds}") double maxSeconds,
+                       @Value("${app.chunking.chars-per-second}") double charsPerSecond) {
+        this.enabled = enabled;
+        this.minChars = minChars;
+        // Ограничение по длительности переводим в символы по средней скорости речи
+        int durationLimit = maxSeconds > 0 ? (int) Math.round(maxSeconds * charsPerSecond) : Integer.MAX_VALUE;
+        this.maxChars = Math.max(minChars * 2, Math.min(maxChars, durationLimit));
+        log.info("TTS chunking {}: {}..{} chars", enabled ? "enabled" : "disabled", this.minChars, this.maxChars);
+    }
+
+    /**
+     * Фрагмент текста для озвучки и исходные предложения, из которых он получен
+     */
+    public static class Chunk {
+        public final String text;
+        // Номер первого исходного предложения в главе (с 1)
+        public final int firstSentence;
+        // Сколько исходных предложений вошло во фрагмент
+        public final int sentenceCount;
+
+        public Chunk(String text, int firstSentence, int sentenceCount) {
+            this.text = text;
+            this.firstSentence = firstSentence;
+            this.sentenceCount = sentenceCount;
+        }
+    }
+
+    /**
+     * Нарезает предложения одного параграфа
+     *
+     * @param sentences     предложения параграфа
+     * @param firstSentence номер первого предложения параграфа в главе
+     */
+    public List<Chunk> chunkParagraph(List<String> sentences, int firstSentence) {
+        List<Chunk> chunks = new ArrayList<>(sentences.size());
+
+        if (!enabled) {
+            for (int i = 0; i < sentences.size(); i++) {
+                chunks.add(new Chunk(sentences.get(i), firstSentence + i, 1));
+            }
+            return chunks;
+        }
+
+        int i = 0;
+        while (i < sentences.size()) {
+            String sentence = sentences.get(i);
+
+            if (sentence.length() > maxChars) {
+                for (String part : splitAtClauses(sentence)) {
+                    chunks.add(new Chunk(part, firstSentence + i, 1));
+                }
+                i++;
+                continue;
+            }
+
+            // Склеиваем короткие предложения со следующими, пока не наберем минимальную длину
+            StringBuilder merged = new StringBuilder(sentence);
+            int count = 1;
+            while (merged.length() < minChars && i + count < sentences.size()
+                    && merged.length() + 1 + sentences.get(i + count).length() <= maxChars) {
+                merged.append(' ').append(sentences.get(i + count));
+                count++;
+            }
+
+            chunks.add(new Chunk(merged.toString(), firstSentence + i, count));
+            i += count;
+        }
+
+        return chunks;
+    }
+
+    private List<String> splitAtClauses(String sentence) {
+        List<String> parts = new ArrayList<>();
+        String rest = sentence;
+
+        while (rest.length() > maxChars) {
+            int cut = lastClauseBoundary(rest, maxChars);
+            if (cut < minChars) {
+                // Нет подходящей границы придаточного - режем по последнему пробелу
+                cut = rest.lastIndexOf(' ', maxChars);
+                if (cut < minChars) {
+                    cut = maxChars;
+                }
+            }
+
+            String head = rest.substring(0, cut).trim();
+            if (!head.isEmpty()) {
+                parts.add(head);
+            }
+            rest = rest.substring(cut).trim();
+        }
+
+        if (!rest.isEmpty()) {
+            parts.add(rest);
+        }
+        return parts;
+    }
+
+    /**
+     * Позиция после последней границы придаточного, не превышающая limit (или -1)
+     */
+    private static int lastClauseBoundary(String text, int limit) {
+        for (int i = Math.min(limit, text.length()) - 1; i > 0; i--) {
+            char c = text.charAt(i);
+            if ((c == ',' || c == ';' || c == ':' || c == '…') && i + 1 < text.length() && text.charAt(i + 1) == ' ') {
+                return i + 1;
+            }
+            // Тире отходит к следующему фрагменту: "сказал он — и вышел"
+            if ((c == '—' || c == '–') && text.charAt(i - 1) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,168 @@
+package com.lytvest.audiotts.service.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ID3v2.3 тег с оглавлением для аудиокниги одним файлом.
+ *
+ * Кроме названия и автора тег содержит кадры глав (CHAP: начало и конец во времени и в байтах файла,
+ * название главы во вложенном TIT2) и оглавление (CTOC), по которому плееры показывают навигацию.
+ * В CTOC помещается не больше 255 ссылок, поэтому у больших книг верхнее оглавление ссылается
+ * на вложенные оглавления по 255 глав. Тексты пишутся в UTF-16: ID3v2.3 не поддерживает UTF-8.
+ */
+public class Id3ChapterTag {
+
+    private static final int HEADER_SIZE = 10;
+    private static final int FRAME_HEADER_SIZE = 10;
+    private static final int MAX_CTOC_ENTRIES = 255;
+    // Смещение не задано (или не помещается в 32 бита)
+    private static final long NO_OFFSET = 0xFFFFFFFFL;
+
+    private static final int ENCODING_UTF16 = 1;
+    private static final int CTOC_TOP_LEVEL = 0x2;
+    private static final int CTOC_ORDERED = 0x1;
+
+    /**
+     * Глава: время в миллисекундах и байты аудио относительно начала аудио данных (после тега)
+     */
+    public static class Chapter {
+        final String title;
+        final long startMillis;
+        final long endMillis;
+        final long startByte;
+        final long endByte;
+
+        public Chapter(String title, long startMillis, long endMillis, long startByte, long endByte) {
+            this.title = title;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.startByte = startByte;
+            this.endByte = endByte;
+        }
+    }
+
+    private final String title;
+    private final String artist;
+    private final List<Chapter> chapters;
+
+    public Id3ChapterTag(String title, String artist, List<Chapter> chapters) {
+        this.title = title;
+        this.artist = artist;
+        this.chapters = chapters;
+    }
+
+    /**
+     * Собирает тег; байтовые смещения глав пересчитываются от начала файла с учетом размера самого тега
+     */
+    public byte[] toBytes() {
+        // Размер тега не зависит от значений смещений: поля фиксированной длины
+        byte[] tag = build(0);
+        return build(tag.length);
+    }
+
+    private byte[] build(long audioStart) {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        if (title != null) {
+            writeFrame(frames, "TIT2", textFrame(title));
+            writeFrame(frames, "TALB", textFrame(title));
+        }
+        if (artist != null) {
+            writeFrame(frames, "TPE1", textFrame(artist));
+        }
+        long durationMillis = chapters.isEmpty() ? 0 : chapters.get(chapters.size() - 1).endMillis;
+        writeFrame(frames, "TLEN", textFrame(Long.toString(durationMillis)));
+
+        List<String> chapterIds = new ArrayList<>(chapters.size());
+        for (int i = 0; i < chapters.size(); i++) {
+            chapterIds.add("chp" + i);
+        }
+        if (chapters.size() <= MAX_CTOC_ENTRIES) {
+            writeFrame(frames, "CTOC", tocFrame("toc", CTOC_TOP_LEVEL | CTOC_ORDERED, chapterIds, title));
+        } else {
+            List<String> tocIds = new ArrayList<>();
+            for (int from = 0; from < chapterIds.size(); from += MAX_CTOC_ENTRIES) {
+                tocIds.add("toc" + tocIds.size());
+            }
+            writeFrame(frames, "CTOC", tocFrame("toc", CTOC_TOP_LEVEL | CTOC_ORDERED, tocIds, title));
+            for (int i = 0; i < tocIds.size(); i++) {
+                List<String> part = chapterIds.subList(i * MAX_CTOC_ENTRIES,
+                        Math.min(chapterIds.size(), (i + 1) * MAX_CTOC_ENTRIES));
+                writeFrame(frames, "CTOC", tocFrame(tocIds.get(i), CTOC_ORDERED, part, null));
+            }
+        }
+        for (int i = 0; i < chapters.size(); i++) {
+            writeFrame(frames, "CHAP", chapterFrame(chapterIds.get(i), chapters.get(i), audioStart));
+        }
+
+        byte[] body = frames.toByteArray();
+        ByteBuffer tag = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        tag.put("ID3".getBytes(StandardCharsets.US_ASCII));
+        tag.put((byte) 3).put((byte) 0);
+        tag.put((byte) 0);
+        tag.putInt(syncsafe(body.length));
+        tag.put(body);
+        return tag.array();
+    }
+
+    private static byte[] chapterFrame(String elementId, Chapter chapter, long audioStart) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        writeElementId(frame, elementId);
+        ByteBuffer times = ByteBuffer.allocate(16);
+        times.putInt((int) Math.min(chapter.startMillis, NO_OFFSET));
+        times.putInt((int) Math.min(chapter.endMillis, NO_OFFSET));
+        times.putInt((int) offset(audioStart + chapter.startByte));
+        times.putInt((int) offset(audioStart + chapter.endByte));
+        frame.writeBytes(times.array());
+        writeFrame(frame, "TIT2", textFrame(chapter.title));
+        return frame.toByteArray();
+    }
+
+    private static byte[] tocFrame(String elementId, int flags, List<String> childIds, String tocTitle) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        writeElementId(frame, elementId);
+        frame.write(flags);
+        frame.write(childIds.size());
+        childIds.forEach(childId -> writeElementId(frame, childId));
+        if (tocTitle != null) {
+            writeFrame(frame, "TIT2", textFrame(tocTitle));
+        }
+        return frame.toByteArray();
+    }
+
+    private static byte[] textFrame(String text) {
+        byte[] encoded = (text != null ? text : "").getBytes(StandardCharsets.UTF_16LE);
+        ByteBuffer frame = ByteBuffer.allocate(1 + 2 + encoded.length);
+        frame.put((byte) ENCODING_UTF16);
+        // BOM little-endian
+        frame.put((byte) 0xFF).put((byte) 0xFE);
+        frame.put(encoded);
+        return frame.array();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, String id, byte[] body) {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        header.put(id.getBytes(StandardCharsets.US_ASCII));
+        // В ID3v2.3 размер кадра - обычное 32-битное число (syncsafe только в заголовке тега)
+        header.putInt(body.length);
+        header.putShort((short) 0);
+        out.writeBytes(header.array());
+        out.writeBytes(body);
+    }
+
+    private static void writeElementId(ByteArrayOutputStream out, String elementId) {
+        out.writeBytes(elementId.getBytes(StandardCharsets.US_ASCII));
+        out.write(0);
+    }
+
+    private static long offset(long position) {
+        return position < NO_OFFSET ? position : NO_OFFSET;
+    }
+
+    private static int syncsafe(int size) {
+        return (size & 0x7F) | ((size & 0x3F80) << 1) | ((size & 0x1FC000) << 2) | ((size & 0xFE00000) << 3);
+    }
+}
@@ -0,0 +1,46 @@
+package com.lytvest.audiotts.service.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ID3v2.4 тег сегмента HLS с упакованным аудио.
+ *
+ * В MP3 кадрах нет меток времени, поэтому каждый сегмент начинается с PRIV кадра
+ * com.apple.streaming.transportStreamTimestamp: время начала сегмента как 33-битный MPEG-2 PTS
+ * (такты 90 кГц) в младших битах восьмибайтового числа. По нему плеер ставит сегменты на шкалу времени.
+ */
+public final class Id3TimestampTag {
+
+    public static final long PTS_CLOCK = 90_000;
+
+    private static final byte[] OWNER = "com.apple.streaming.transportStreamTimestamp".getBytes(StandardCharsets.ISO_8859_1);
+    private static final long PTS_MASK = (1L << 33) - 1;
+    private static final int HEADER_SIZE = 10;
+    private static final int FRAME_HEADER_SIZE = 10;
+    // Владелец с завершающим нулем и метка времени
+    private static final int PRIV_SIZE = OWNER.length + 1 + 8;
+
+    public static final int SIZE = HEADER_SIZE + FRAME_HEADER_SIZE + PRIV_SIZE;
+
+    private Id3TimestampTag() {
+    }
+
+    /**
+     * Тег с PTS начала сегмента
+     */
+    public static byte[] toBytes(long pts) {
+        ByteBuffer tag = ByteBuffer.allocate(SIZE);
+        tag.put("ID3".getBytes(StandardCharsets.US_ASCII));
+        tag.put((byte) 4).put((byte) 0);
+        tag.put((byte) 0);
+        // Размеры меньше 128 байт, syncsafe запись совпадает с обычной
+        tag.putInt(FRAME_HEADER_SIZE + PRIV_SIZE);
+        tag.put("PRIV".getBytes(StandardCharsets.US_ASCII));
+        tag.putInt(PRIV_SIZE);
+        tag.putShort((short) 0);
+        tag.put(OWNER).put((byte) 0);
+        tag.putLong(pts & PTS_MASK);
+        return tag.array();
+    }
+}
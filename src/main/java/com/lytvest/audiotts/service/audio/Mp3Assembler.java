@@ -0,0 +1,170 @@
+package com.lytvest.audiotts.service.audio;
+
+import com.lytvest.audiotts.service.storage.AudioSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Склейка MP3 файлов по кадрам.
+ *
+ * Первый проход только читает заголовки кадров и считает кадры и байты каждого файла; второй
+ * пишет один Xing/Info кадр с общим числом кадров и таблицей перемотки и копирует аудио кадры
+ * без ID3 тегов и Xing кадров исходных файлов. Память не зависит от длины главы.
+ */
+@Component
+@Slf4j
+public class Mp3Assembler {
+
+    private static final int FLAG_FRAMES = 0x1;
+    private static final int FLAG_BYTES = 0x2;
+    private static final int FLAG_TOC = 0x4;
+    private static final int TOC_SIZE = 100;
+    // Тег, флаги, число кадров, число байт и таблица перемотки
+    private static final int INFO_TAG_SIZE = 4 + 4 + 4 + 4 + TOC_SIZE;
+
+    /**
+     * Сканирует аудио предложений в порядке воспроизведения; отсутствующие файлы пропускаются
+     */
+    public Mp3Layout scan(List<AudioSegment> files) throws IOException {
+        List<Mp3Layout.Part> parts = new ArrayList<>(files.size());
+        Mp3FrameHeader format = null;
+        boolean variableBitrate = false;
+        long frameCount = 0;
+        long audioBytes = 0;
+
+        for (AudioSegment file : files) {
+            if (!file.exists()) {
+                log.warn("Audio file not found: {}", file);
+                continue;
+            }
+
+            long frames = 0;
+            long bytes = 0;
+            boolean incompatible = false;
+            try (Mp3FrameReader reader = new Mp3FrameReader(file.open())) {
+                while (reader.nextFrame()) {
+                    Mp3FrameHeader header = reader.header();
+                    if (format == null) {
+                        format = header;
+                    } else if (!incompatible && !header.isCompatibleWith(format)) {
+                        incompatible = true;
+                    }
+                    variableBitrate |= header.getBitrateIndex() != format.getBitrateIndex();
+                    frames++;
+                    bytes += header.getFrameLength();
+                }
+            }
+
+            if (incompatible) {
+                log.warn("Audio file {} has a different MPEG format than the first file", file);
+            }
+            if (frames > 0) {
+                parts.add(new Mp3Layout.Part(file, frames, bytes));
+                frameCount += frames;
+                audioBytes += bytes;
+            }
+        }
+
+        byte[] infoFrame = format != null && format.isLayer3()
+                ? buildInfoFrame(format, parts, frameCount, audioBytes, variableBitrate)
+                : new byte[0];
+        return new Mp3Layout(parts, format, frameCount, audioBytes, infoFrame);
+    }
+
+    /**
+     * Объем и длительность аудио кадров по заголовкам (без декодирования; подходит и для VBR)
+     */
+    public Mp3AudioInfo measure(InputStream in) throws IOException {
+        long bytes = 0;
+        long samples = 0;
+        int sampleRate = 0;
+        try (Mp3FrameReader reader = new Mp3FrameReader(in)) {
+            while (reader.nextFrame()) {
+                Mp3FrameHeader header = reader.header();
+                bytes += header.getFrameLength();
+                if (sampleRate == 0) {
+                    sampleRate = header.getSampleRate();
+                }
+                // Кадры другой частоты (битый файл) пересчитываются в частоту первого кадра
+                samples += header.getSampleRate() == sampleRate ? header.getSamplesPerFrame()
+                        : Math.round((double) header.getSamplesPerFrame() * sampleRate / header.getSampleRate());
+            }
+        }
+        return new Mp3AudioInfo(bytes, samples, sampleRate);
+    }
+
+    /**
+     * Пишет Xing/Info кадр и аудио кадры всех файлов
+     */
+    public void write(Mp3Layout layout, OutputStream out) throws IOException {
+        out.write(layout.getInfoFrame());
+        for (Mp3Layout.Part part : layout.getParts()) {
+            try (Mp3FrameReader reader = new Mp3FrameReader(part.audio.open())) {
+                while (reader.nextFrame()) {
+                    reader.writeFrame(out);
+                }
+            } catch (NoSuchFileException e) {
+                log.warn("Audio file removed while streaming: {}", part.audio);
+            }
+        }
+    }
+
+    /**
+     * Пустой кадр того же формата с Xing (VBR) или Info (CBR) тегом
+     */
+    private static byte[] buildInfoFrame(Mp3FrameHeader format, List<Mp3Layout.Part> parts,
+                                         long frameCount, long audioBytes, boolean variableBitrate) {
+        // Наименьший битрейт, при котором тег помещается в кадр
+        Mp3FrameHeader header = null;
+        for (int index = 1; index < 15; index++) {
+            header = format.withBitrateIndex(index);
+            if (header.getFrameLength() >= header.getSideInfoEnd() + INFO_TAG_SIZE) {
+                break;
+            }
+        }
+
+        byte[] frame = new byte[header.getFrameLength()];
+        long totalBytes = frame.length + audioBytes;
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.putInt(header.getRaw());
+        buffer.position(header.getSideInfoEnd());
+        buffer.put((variableBitrate ? "Xing" : "Info").getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(FLAG_FRAMES | FLAG_BYTES | FLAG_TOC);
+        buffer.putInt((int) frameCount);
+        buffer.putInt((int) totalBytes);
+        buffer.put(buildToc(parts, frameCount, frame.length, totalBytes));
+        return frame;
+    }
+
+    /**
+     * Таблица перемотки: позиция в файле (в 1/256 размера) для каждого процента длительности.
+     * Внутри файла предложения позиция интерполируется, поэтому хватает счетчиков по файлам
+     */
+    private static byte[] buildToc(List<Mp3Layout.Part> parts, long frameCount, int infoFrameLength, long totalBytes) {
+        byte[] toc = new byte[TOC_SIZE];
+        int partIndex = 0;
+        long partStartFrame = 0;
+        long partStartByte = infoFrameLength;
+        for (int percent = 0; percent < TOC_SIZE; percent++) {
+            double targetFrame = (double) frameCount * percent / TOC_SIZE;
+            while (partIndex < parts.size() - 1 && partStartFrame + parts.get(partIndex).frames <= targetFrame) {
+                partStartFrame += parts.get(partIndex).frames;
+                partStartByte += parts.get(partIndex).bytes;
+                partIndex++;
+            }
+            Mp3Layout.Part part = parts.get(partIndex);
+            double offset = partStartByte + (targetFrame - partStartFrame) / part.frames * part.bytes;
+            toc[percent] = (byte) Math.min(255, (int) (offset * 256 / totalBytes));
+        }
+        return toc;
+    }
+}
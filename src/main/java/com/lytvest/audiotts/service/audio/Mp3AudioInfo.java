@@ -0,0 +1,59 @@
+package com.lytvest.audiotts.service.audio;
+
+/**
+ * Аудио кадры одного файла: объем (без тегов и Xing кадра) и точная длительность в сэмплах.
+ *
+ * Длительность хранится сэмплами, а не миллисекундами: время начала предложения в главе - сумма
+ * сэмплов предыдущих предложений, и округляется только результат, а не каждое слагаемое.
+ */
+public class Mp3AudioInfo {
+
+    private final long frameBytes;
+    private final long samples;
+    private final int sampleRate;
+
+    public Mp3AudioInfo(long frameBytes, long samples, int sampleRate) {
+        this.frameBytes = frameBytes;
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Байты кадров, которые попадают в склеенное аудио главы
+     */
+    public long getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Число сэмплов (на канал) во всех кадрах
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Частота дискретизации кадров; 0, если кадров нет
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Число сэмплов в другой частоте дискретизации (точно, если частота та же)
+     */
+    public long samplesAt(int rate) {
+        return rate == sampleRate || sampleRate == 0 ? samples : Math.round((double) samples * rate / sampleRate);
+    }
+
+    public long getDurationMillis() {
+        return millis(samples, sampleRate);
+    }
+
+    /**
+     * Сэмплы в миллисекундах с округлением
+     */
+    public static long millis(long samples, int sampleRate) {
+        return sampleRate > 0 ? Math.round(samples * 1000.0 / sampleRate) : 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.lytvest.audiotts.service.audio;
+
+/**
+ * Заголовок MPEG аудио кадра (4 байта): версия, слой, битрейт, частота и длина кадра
+ */
+public final class Mp3FrameHeader {
+
+    public static final int HEADER_SIZE = 4;
+
+    private static final int VERSION_2_5 = 0;
+    private static final int VERSION_2 = 2;
+    private static final int VERSION_1 = 3;
+
+    private static final int LAYER_3 = 1;
+    private static final int LAYER_2 = 2;
+    private static final int LAYER_1 = 3;
+
+    private static final int CHANNEL_MODE_MONO = 3;
+
+    // Битрейты в кбит/с по индексу из заголовка; 0 (free format) и 15 недопустимы
+    private static final int[] BITRATES_V1_L1 = {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448};
+    private static final int[] BITRATES_V1_L2 = {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384};
+    private static final int[] BITRATES_V1_L3 = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] BITRATES_V2_L1 = {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256};
+    private static final int[] BITRATES_V2_L23 = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    private static final int[] SAMPLE_RATES_V1 = {44100, 48000, 32000};
+
+    private final int raw;
+    private final int version;
+    private final int layer;
+    private final int bitrateIndex;
+    private final int sampleRate;
+
+    private Mp3FrameHeader(int raw, int version, int layer, int bitrateIndex, int sampleRate) {
+        this.raw = raw;
+        this.version = version;
+        this.layer = layer;
+        this.bitrateIndex = bitrateIndex;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Разбирает заголовок; null, если это не заголовок кадра
+     */
+    public static Mp3FrameHeader parse(int raw) {
+        if ((raw & 0xFFE00000) != 0xFFE00000) {
+            return null;
+        }
+        int version = (raw >>> 19) & 3;
+        int layer = (raw >>> 17) & 3;
+        int bitrateIndex = (raw >>> 12) & 0xF;
+        int sampleRateIndex = (raw >>> 10) & 3;
+        int emphasis = raw & 3;
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3 || emphasis == 2) {
+            return null;
+        }
+        int sampleRate = SAMPLE_RATES_V1[sampleRateIndex];
+        if (version == VERSION_2) {
+            sampleRate /= 2;
+        } else if (version == VERSION_2_5) {
+            sampleRate /= 4;
+        }
+        return new Mp3FrameHeader(raw, version, layer, bitrateIndex, sampleRate);
+    }
+
+    public static Mp3FrameHeader parse(byte[] buffer, int offset) {
+        return parse(((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF));
+    }
+
+    /**
+     * Заголовок с теми же версией, слоем, частотой и каналами, но другим битрейтом, без CRC и без padding
+     */
+    public Mp3FrameHeader withBitrateIndex(int newBitrateIndex) {
+        int newRaw = (raw & ~(0xF << 12) & ~(1 << 9)) | (1 << 16) | (newBitrateIndex << 12);
+        return new Mp3FrameHeader(newRaw, version, layer, newBitrateIndex, sampleRate);
+    }
+
+    public int getRaw() {
+        return raw;
+    }
+
+    public boolean isLayer3() {
+        return layer == LAYER_3;
+    }
+
+    public boolean isMpeg1() {
+        return version == VERSION_1;
+    }
+
+    public boolean isMono() {
+        return ((raw >>> 6) & 3) == CHANNEL_MODE_MONO;
+    }
+
+    public boolean hasCrc() {
+        return ((raw >>> 16) & 1) == 0;
+    }
+
+    public int getBitrateIndex() {
+        return bitrateIndex;
+    }
+
+    public int getBitrateKbps() {
+        if (version == VERSION_1) {
+            return switch (layer) {
+                case LAYER_1 -> BITRATES_V1_L1[bitrateIndex];
+                case LAYER_2 -> BITRATES_V1_L2[bitrateIndex];
+                default -> BITRATES_V1_L3[bitrateIndex];
+            };
+        }
+        return layer == LAYER_1 ? BITRATES_V2_L1[bitrateIndex] : BITRATES_V2_L23[bitrateIndex];
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        if (layer == LAYER_1) {
+            return 384;
+        }
+        return layer == LAYER_3 && version != VERSION_1 ? 576 : 1152;
+    }
+
+    public int getFrameLength() {
+        int padding = (raw >>> 9) & 1;
+        int bitrate = getBitrateKbps() * 1000;
+        if (layer == LAYER_1) {
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+        int slotsPerSample = getSamplesPerFrame() / 8;
+        return slotsPerSample * bitrate / sampleRate + padding;
+    }
+
+    /**
+     * Смещение данных после заголовка, CRC и side info (там пишется Xing/Info тег)
+     */
+    public int getSideInfoEnd() {
+        int sideInfo;
+        if (isMpeg1()) {
+            sideInfo = isMono() ? 17 : 32;
+        } else {
+            sideInfo = isMono() ? 9 : 17;
+        }
+        return HEADER_SIZE + (hasCrc() ? 2 : 0) + sideInfo;
+    }
+
+    /**
+     * Тот же формат потока: кадры можно склеивать без перекодирования
+     */
+    public boolean isCompatibleWith(Mp3FrameHeader other) {
+        return version == other.version && layer == other.layer && sampleRate == other.sampleRate
+                && isMono() == other.isMono();
+    }
+}
@@ -0,0 +1,164 @@
+package com.lytvest.audiotts.service.audio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Последовательное чтение аудио кадров MP3 файла через буфер фиксированного размера.
+ *
+ * ID3v2 теги в начале, Xing/Info/VBRI кадр и ID3v1/APE теги в конце пропускаются,
+ * мусор между кадрами пропускается до следующей синхронизации, обрезанный последний кадр отбрасывается.
+ */
+public class Mp3FrameReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ID3V2_HEADER_SIZE = 10;
+    private static final int VBRI_OFFSET = Mp3FrameHeader.HEADER_SIZE + 32;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    private boolean firstFrame = true;
+    private Mp3FrameHeader header;
+    private int frameStart;
+
+    public Mp3FrameReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Переходит к следующему аудио кадру; false, если кадров больше нет
+     */
+    public boolean nextFrame() throws IOException {
+        if (header != null) {
+            position = frameStart + header.getFrameLength();
+            header = null;
+        }
+
+        while (ensure(Mp3FrameHeader.HEADER_SIZE)) {
+            if (startsWith("ID3")) {
+                if (!ensure(ID3V2_HEADER_SIZE)) {
+                    return false;
+                }
+                skip(id3v2Length());
+                continue;
+            }
+            if (startsWith("TAG") || startsWith("APETAGEX")) {
+                return false;
+            }
+
+            Mp3FrameHeader candidate = Mp3FrameHeader.parse(buffer, position);
+            if (candidate == null) {
+                position++;
+                continue;
+            }
+            if (!ensure(candidate.getFrameLength())) {
+                return false;
+            }
+
+            if (firstFrame) {
+                firstFrame = false;
+                if (isInfoFrame(candidate)) {
+                    position += candidate.getFrameLength();
+                    continue;
+                }
+            }
+
+            header = candidate;
+            frameStart = position;
+            return true;
+        }
+        return false;
+    }
+
+    public Mp3FrameHeader header() {
+        return header;
+    }
+
+    /**
+     * Копирует текущий кадр целиком
+     */
+    public void writeFrame(OutputStream out) throws IOException {
+        out.write(buffer, frameStart, header.getFrameLength());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean isInfoFrame(Mp3FrameHeader candidate) {
+        if (!candidate.isLayer3()) {
+            return false;
+        }
+        int tagOffset = candidate.getSideInfoEnd();
+        if (tagOffset + 4 <= candidate.getFrameLength()
+                && (matches(position + tagOffset, "Xing") || matches(position + tagOffset, "Info"))) {
+            return true;
+        }
+        return VBRI_OFFSET + 4 <= candidate.getFrameLength() && matches(position + VBRI_OFFSET, "VBRI");
+    }
+
+    private long id3v2Length() {
+        int size = ((buffer[position + 6] & 0x7F) << 21) | ((buffer[position + 7] & 0x7F) << 14)
+                | ((buffer[position + 8] & 0x7F) << 7) | (buffer[position + 9] & 0x7F);
+        boolean footer = (buffer[position + 5] & 0x10) != 0;
+        return ID3V2_HEADER_SIZE + size + (footer ? ID3V2_HEADER_SIZE : 0);
+    }
+
+    private boolean startsWith(String tag) throws IOException {
+        return ensure(tag.length()) && matches(position, tag);
+    }
+
+    private boolean matches(int offset, String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (buffer[offset + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Гарантирует, что в буфере с текущей позиции есть count байт; false в конце потока
+     */
+    private boolean ensure(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (position + count > buffer.length) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit - position < count && !endOfStream) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfStream = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - position >= count;
+    }
+
+    private void skip(long count) throws IOException {
+        long buffered = limit - position;
+        if (count <= buffered) {
+            position += (int) count;
+            return;
+        }
+        position = limit;
+        try {
+            in.skipNBytes(count - buffered);
+        } catch (EOFException e) {
+            endOfStream = true;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.lytvest.audiotts.service.audio;
+
+import com.lytvest.audiotts.service.storage.AudioSegment;
+
+import java.util.List;
+
+/**
+ * Результат сканирования MP3 файлов перед склейкой: кадры и байты каждого файла и заголовок итогового потока
+ */
+public class Mp3Layout {
+
+    /**
+     * Аудио данные одного предложения (без тегов и Xing кадра)
+     */
+    public static class Part {
+        public final AudioSegment audio;
+        public final long frames;
+        public final long bytes;
+
+        Part(AudioSegment audio, long frames, long bytes) {
+            this.audio = audio;
+            this.frames = frames;
+            this.bytes = bytes;
+        }
+    }
+
+    private final List<Part> parts;
+    private final Mp3FrameHeader format;
+    private final long frameCount;
+    private final long audioBytes;
+    private final byte[] infoFrame;
+
+    Mp3Layout(List<Part> parts, Mp3FrameHeader format, long frameCount, long audioBytes, byte[] infoFrame) {
+        this.parts = parts;
+        this.format = format;
+        this.frameCount = frameCount;
+        this.audioBytes = audioBytes;
+        this.infoFrame = infoFrame;
+    }
+
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public boolean isEmpty() {
+        return frameCount == 0;
+    }
+
+    /**
+     * Xing/Info кадр, который пишется перед аудио данными (пустой, если формат его не поддерживает)
+     */
+    public byte[] getInfoFrame() {
+        return infoFrame;
+    }
+
+    /**
+     * Размер итогового потока в байтах
+     */
+    public long getContentLength() {
+        return infoFrame.length + audioBytes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis(frameCount);
+    }
+
+    /**
+     * Длительность заданного числа кадров (например, всех кадров до начала части)
+     */
+    public long durationMillis(long frames) {
+        if (format == null) {
+            return 0;
+        }
+        return frames * format.getSamplesPerFrame() * 1000 / format.getSampleRate();
+    }
+}
@@ -4,11 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 
 @Service
@@ -22,23 +27,27 @@ public class F5TtsService {
     private String f5ttsBaseUrl;
     
     /**
-     * Генерирует аудио из текста
+     * Генерирует аудио из текста и пишет ответ потоком в файл target (без буфера всего ответа в памяти).
+     * Возвращает размер аудио в байтах
      */
-    public Mono<byte[]> generateAudio(String text, String voiceId) {
+    public Mono<Long> generateAudio(String text, String voiceId, Path target) {
         Map<String, Object> request = Map.of(
             "text", text,
             "voice_id", voiceId != null ? voiceId : "default",
             "format", "mp3"
         );
         
-        return webClient.post()
+        Flux<DataBuffer> body = webClient.post()
                 .uri(f5ttsBaseUrl + "/api/tts")
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(request)
                 .retrieve()
-                .bodyToMono(byte[].class)
-                .doOnSuccess(audio -> log.info("Generated audio for text: {} (size: {} bytes)", 
-                    text.substring(0, Math.min(50, text.length())), audio.length))
+                .bodyToFlux(DataBuffer.class);
+        
+        return DataBufferUtils.write(body, target)
+                .then(Mono.fromCallable(() -> Files.size(target)))
+                .doOnSuccess(size -> log.info("Generated audio for text: {} (size: {} bytes)", 
+                    text.substring(0, Math.min(50, text.length())), size))
                 .doOnError(error -> log.error("Error generating audio for text: {}", text, error));
     }
     
@@ -1,16 +1,22 @@
 package com.lytvest.audiotts.service.processor;
 
+import com.lytvest.audiotts.service.ChapterAudioService;
 import com.lytvest.audiotts.service.SentenceProcessingService;
 import com.lytvest.audiotts.service.external.F5TtsService;
 import com.lytvest.audiotts.service.external.OllamaService;
 import com.lytvest.audiotts.service.queue.*;
+import com.lytvest.audiotts.service.storage.AudioStorage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
+
 /**
  * Асинхронные обработчики очередей
  */
@@ -23,6 +29,12 @@ public class QueueProcessorService {
     private final OllamaService ollamaService;
     private final F5TtsService f5TtsService;
     private final SentenceProcessingService sentenceProcessingService;
+    private final ChapterAudioService chapterAudioService;
+    private final AudioStorage audioStorage;
+    
+    @Lazy
+    @Autowired
+    private QueueProcessorService self;
     
     private volatile boolean running = true;
     
@@ -32,9 +44,11 @@ public class QueueProcessorService {
     @EventListener(ApplicationReadyEvent.class)
     public void startProcessors() {
         log.info("Starting queue processors...");
-        processCharacterDeterminationQueue();
-        processStressQueue();
-        processTtsQueue();
+        // Через прокси: при вызове this.process...() @Async не срабатывает и первый цикл блокирует остальные
+        self.processCharacterDeterminationQueue();
+        self.processStressQueue();
+        self.processTtsQueue();
+        self.processChapterAssemblyQueue();
     }
     
     /**
@@ -60,8 +74,12 @@ public class QueueProcessorService {
                             task.getExistingCharacters()
                     ).block();
                     
-                    // Обновляем предложение
-                    sentenceProcessingService.updateSentenceCharacter(task.getSentenceId(), character);
+                    // Обновляем предложение (запись в БД и следующая задача - после сброса буфера)
+                    sentenceProcessingService.updateSentenceCharacter(task, character)
+                            .exceptionally(error -> {
+                                log.error("Failed to save character for sentence {}", task.getSentenceId(), error);
+                                return null;
+                            });
                     
                     log.info("Character determined for sentence {}: {}", task.getSentenceId(), character);
                     
@@ -108,8 +126,12 @@ public class QueueProcessorService {
                     // Расставляем ударения через Ollama
                     String textWithStress = ollamaService.addStressMarks(task.getText()).block();
                     
-                    // Обновляем предложение
-                    sentenceProcessingService.updateSentenceStress(task.getSentenceId(), textWithStress);
+                    // Обновляем предложение (запись в БД и следующая задача - после сброса буфера)
+                    sentenceProcessingService.updateSentenceStress(task, textWithStress)
+                            .exceptionally(error -> {
+                                log.error("Failed to save stress for sentence {}", task.getSentenceId(), error);
+                                return null;
+                            });
                     
                     log.info("Stress added for sentence {}", task.getSentenceId());
                     
@@ -149,20 +171,35 @@ public class QueueProcessorService {
                 
                 log.debug("Processing TTS for sentence: {}", task.getSentenceId());
                 
-                // Получаем разрешение на использование F5-TTS
-                queueService.acquireF5TtsPermit();
-                
+                // Ответ F5-TTS пишется во временный файл и оттуда копируется в сегмент главы
+                Path audioFile = audioStorage.createTempFile("tts_" + task.getSentenceId() + "_");
                 try {
+                    // Получаем разрешение на использование F5-TTS
+                    queueService.acquireF5TtsPermit();
+                    
                     // Генерируем аудио через F5-TTS
-                    byte[] audioData = f5TtsService.generateAudio(task.getText(), task.getVoiceId()).block();
+                    try {
+                        f5TtsService.generateAudio(task.getText(), task.getVoiceId(), audioFile).block();
+                    } catch (RuntimeException e) {
+                        // Переозвучка предложения не состоится, глава не должна ее ждать
+                        chapterAudioService.revoiceSkipped(task.getSentenceId());
+                        throw e;
+                    } finally {
+                        queueService.releaseF5TtsPermit();
+                    }
                     
                     // Сохраняем аудио файл
-                    sentenceProcessingService.saveSentenceAudio(task.getSentenceId(), audioData);
+                    sentenceProcessingService.saveSentenceAudio(task, audioFile)
+                            .exceptionally(error -> {
+                                log.error("Failed to save audio for sentence {}", task.getSentenceId(), error);
+                                chapterAudioService.revoiceSkipped(task.getSentenceId());
+                                return null;
+                            });
                     
                     log.info("TTS generated for sentence {}", task.getSentenceId());
                     
                 } finally {
-                    queueService.releaseF5TtsPermit();
+                    audioStorage.delete(audioFile);
                 }
                 
             } catch (InterruptedException e) {
@@ -184,6 +221,41 @@ public class QueueProcessorService {
         log.info("TTS queue processor stopped");
     }
     
+    /**
+     * Обработчик очереди сборки аудио глав
+     */
+    @Async
+    public void processChapterAssemblyQueue() {
+        log.info("Started chapter assembly queue processor");
+        
+        while (running) {
+            try {
+                ChapterAssemblyTask task = queueService.takeChapterAssemblyTask();
+                
+                log.debug("Assembling audio for chapter: {}", task.getChapterId());
+                
+                // Склеиваем аудио предложений в файл главы
+                chapterAudioService.assembleChapter(task.getChapterId(), task.isReassemble());
+                
+            } catch (InterruptedException e) {
+                log.info("Chapter assembly queue processor interrupted");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error processing chapter assembly task", e);
+                // Небольшая пауза перед следующей попыткой
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        
+        log.info("Chapter assembly queue processor stopped");
+    }
+    
     /**
      * Останавливает все обработчики
      */
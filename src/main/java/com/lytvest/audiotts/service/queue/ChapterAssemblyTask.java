@@ -0,0 +1,18 @@
+package com.lytvest.audiotts.service.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChapterAssemblyTask {
+    private Long chapterId;
+    // Пересобрать уже готовую главу (после переозвучки ее предложений)
+    private boolean reassemble;
+
+    public ChapterAssemblyTask(Long chapterId) {
+        this(chapterId, false);
+    }
+}
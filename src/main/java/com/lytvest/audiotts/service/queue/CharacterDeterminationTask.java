@@ -14,4 +14,6 @@ public class CharacterDeterminationTask {
     private String text;
     private List<String> existingCharacters;
     private Long bookId;
+    // Поколение обработки предложения, см. Sentence.processingGeneration
+    private int generation;
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
@@ -31,6 +32,7 @@ public class QueueService {
     private final BlockingQueue<CharacterDeterminationTask> characterQueue = new LinkedBlockingQueue<>();
     private final BlockingQueue<StressTask> stressQueue = new LinkedBlockingQueue<>();
     private final BlockingQueue<TtsTask> ttsQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ChapterAssemblyTask> chapterAssemblyQueue = new LinkedBlockingQueue<>();
     
     /**
      * Добавляет задачу определения персонажа в очередь
@@ -71,6 +73,43 @@ public class QueueService {
         }
     }
     
+    /**
+     * Добавляет задачу сборки аудио главы в очередь
+     */
+    public void addChapterAssemblyTask(ChapterAssemblyTask task) {
+        try {
+            chapterAssemblyQueue.put(task);
+            log.debug("Added chapter assembly task for chapter ID: {}", task.getChapterId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while adding chapter assembly task", e);
+        }
+    }
+    
+    /**
+     * Добавляет пачку задач определения персонажей в очередь
+     */
+    public void addCharacterDeterminationTasks(Collection<CharacterDeterminationTask> tasks) {
+        characterQueue.addAll(tasks);
+        log.debug("Added {} character determination tasks", tasks.size());
+    }
+    
+    /**
+     * Добавляет пачку задач расстановки ударений в очередь
+     */
+    public void addStressTasks(Collection<StressTask> tasks) {
+        stressQueue.addAll(tasks);
+        log.debug("Added {} stress tasks", tasks.size());
+    }
+    
+    /**
+     * Добавляет пачку задач TTS в очередь
+     */
+    public void addTtsTasks(Collection<TtsTask> tasks) {
+        ttsQueue.addAll(tasks);
+        log.debug("Added {} TTS tasks", tasks.size());
+    }
+    
     /**
      * Получает следующую задачу определения персонажа
      */
@@ -92,6 +131,13 @@ public class QueueService {
         return ttsQueue.take();
     }
     
+    /**
+     * Получает следующую задачу сборки аудио главы
+     */
+    public ChapterAssemblyTask takeChapterAssemblyTask() throws InterruptedException {
+        return chapterAssemblyQueue.take();
+    }
+    
     /**
      * Получает разрешение на использование Ollama
      */
@@ -128,6 +174,7 @@ public class QueueService {
             .characterQueueSize(characterQueue.size())
             .stressQueueSize(stressQueue.size())
             .ttsQueueSize(ttsQueue.size())
+            .chapterAssemblyQueueSize(chapterAssemblyQueue.size())
             .ollamaAvailable(ollamaSemaphore.availablePermits() > 0)
             .f5ttsAvailable(f5ttsSemaphore.availablePermits() > 0)
             .build();
@@ -137,14 +184,16 @@ public class QueueService {
         public final int characterQueueSize;
         public final int stressQueueSize;
         public final int ttsQueueSize;
+        public final int chapterAssemblyQueueSize;
         public final boolean ollamaAvailable;
         public final boolean f5ttsAvailable;
         
-        private QueueStats(int characterQueueSize, int stressQueueSize, int ttsQueueSize, 
+        private QueueStats(int characterQueueSize, int stressQueueSize, int ttsQueueSize, int chapterAssemblyQueueSize,
                           boolean ollamaAvailable, boolean f5ttsAvailable) {
             this.characterQueueSize = characterQueueSize;
             this.stressQueueSize = stressQueueSize;
             this.ttsQueueSize = ttsQueueSize;
+            this.chapterAssemblyQueueSize = chapterAssemblyQueueSize;
             this.ollamaAvailable = ollamaAvailable;
             this.f5ttsAvailable = f5ttsAvailable;
         }
@@ -157,6 +206,7 @@ public class QueueService {
             private int characterQueueSize;
             private int stressQueueSize;
             private int ttsQueueSize;
+            private int chapterAssemblyQueueSize;
             private boolean ollamaAvailable;
             private boolean f5ttsAvailable;
             
@@ -175,6 +225,11 @@ public class QueueService {
                 return this;
             }
             
+            public QueueStatsBuilder chapterAssemblyQueueSize(int chapterAssemblyQueueSize) {
+                this.chapterAssemblyQueueSize = chapterAssemblyQueueSize;
+                return this;
+            }
+            
             public QueueStatsBuilder ollamaAvailable(boolean ollamaAvailable) {
                 this.ollamaAvailable = ollamaAvailable;
                 return this;
@@ -186,7 +241,7 @@ public class QueueService {
             }
             
             public QueueStats build() {
-                return new QueueStats(characterQueueSize, stressQueueSize, ttsQueueSize, 
+                return new QueueStats(characterQueueSize, stressQueueSize, ttsQueueSize, chapterAssemblyQueueSize,
                                     ollamaAvailable, f5ttsAvailable);
             }
         }
@@ -10,4 +10,6 @@ import lombok.NoArgsConstructor;
 public class StressTask {
     private Long sentenceId;
     private String text;
+    // Поколение обработки предложения, см. Sentence.processingGeneration
+    private int generation;
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.lytvest.audiotts.service.queue;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Постановка задач в очереди после коммита транзакции.
+ *
+ * Задачи, добавленные внутри транзакции, копятся и ставятся в очереди одной пачкой после коммита,
+ * при откате отбрасываются. Вне транзакции задачи ставятся сразу.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TaskDispatcher {
+    
+    private final QueueService queueService;
+    
+    /**
+     * Задачи одной транзакции
+     */
+    private static class PendingTasks {
+        final List<CharacterDeterminationTask> characterTasks = new ArrayList<>();
+        final List<StressTask> stressTasks = new ArrayList<>();
+        final List<TtsTask> ttsTasks = new ArrayList<>();
+        final List<ChapterAssemblyTask> chapterAssemblyTasks = new ArrayList<>();
+    }
+    
+    /**
+     * Ставит задачу определения персонажа
+     */
+    public void dispatch(CharacterDeterminationTask task) {
+        PendingTasks pending = currentTransactionTasks();
+        if (pending == null) {
+            queueService.addCharacterDeterminationTask(task);
+        } else {
+            pending.characterTasks.add(task);
+        }
+    }
+    
+    /**
+     * Ставит задачу расстановки ударений
+     */
+    public void dispatch(StressTask task) {
+        PendingTasks pending = currentTransactionTasks();
+        if (pending == null) {
+            queueService.addStressTask(task);
+        } else {
+            pending.stressTasks.add(task);
+        }
+    }
+    
+    /**
+     * Ставит задачу TTS
+     */
+    public void dispatch(TtsTask task) {
+        PendingTasks pending = currentTransactionTasks();
+        if (pending == null) {
+            queueService.addTtsTask(task);
+        } else {
+            pending.ttsTasks.add(task);
+        }
+    }
+    
+    /**
+     * Ставит задачу сборки аудио главы
+     */
+    public void dispatch(ChapterAssemblyTask task) {
+        PendingTasks pending = currentTransactionTasks();
+        if (pending == null) {
+            queueService.addChapterAssemblyTask(task);
+        } else {
+            pending.chapterAssemblyTasks.add(task);
+        }
+    }
+    
+    private PendingTasks currentTransactionTasks() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        
+        PendingTasks pending = (PendingTasks) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        
+        PendingTasks created = new PendingTasks();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(created);
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TaskDispatcher.this);
+                if (status != STATUS_COMMITTED) {
+                    log.debug("Transaction rolled back, dropped {} queued tasks",
+                            created.characterTasks.size() + created.stressTasks.size() + created.ttsTasks.size()
+                                    + created.chapterAssemblyTasks.size());
+                }
+            }
+        });
+        return created;
+    }
+    
+    private void publish(PendingTasks pending) {
+        if (!pending.characterTasks.isEmpty()) {
+            queueService.addCharacterDeterminationTasks(pending.characterTasks);
+        }
+        if (!pending.stressTasks.isEmpty()) {
+            queueService.addStressTasks(pending.stressTasks);
+        }
+        if (!pending.ttsTasks.isEmpty()) {
+            queueService.addTtsTasks(pending.ttsTasks);
+        }
+        pending.chapterAssemblyTasks.forEach(queueService::addChapterAssemblyTask);
+    }
+}
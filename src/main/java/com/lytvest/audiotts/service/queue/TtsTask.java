@@ -12,4 +12,6 @@ public class TtsTask {
     private String text;
     private String voiceId;
     private String outputPath;
+    // Поколение обработки предложения на момент постановки задачи (результат прошлого поколения не записывается)
+    private int generation;
 }
\ No newline at end of file
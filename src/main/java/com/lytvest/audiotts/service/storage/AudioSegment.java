@@ -0,0 +1,167 @@
+package com.lytvest.audiotts.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Аудио предложения: участок файла сегмента главы или отдельный файл целиком
+ * (предложения, озвученные до перехода на сегменты).
+ */
+public class AudioSegment {
+
+    private static final long WHOLE_FILE = -1;
+
+    private final Path path;
+    private final long offset;
+    private final long length;
+    // Уже открытый файл: чтения идут из него, а не из файла по пути
+    private final FileChannel channel;
+
+    AudioSegment(Path path, long offset, long length) {
+        this(path, offset, length, null);
+    }
+
+    private AudioSegment(Path path, long offset, long length, FileChannel channel) {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+        this.channel = channel;
+    }
+
+    /**
+     * Аудио по колонкам предложения; без смещения - файл целиком
+     */
+    public static AudioSegment of(String path, Long offset, Long length) {
+        if (offset == null || length == null) {
+            return new AudioSegment(Paths.get(path), 0, WHOLE_FILE);
+        }
+        return new AudioSegment(Paths.get(path), offset, length);
+    }
+
+    /**
+     * Аудио из уже открытого файла целиком: сколько бы раз его ни читали, читается тот файл, что был
+     * открыт, даже если по пути его уже удалили или заменили. Канал закрывает вызывающий
+     */
+    public static AudioSegment ofChannel(Path path, FileChannel channel) throws IOException {
+        return new AudioSegment(path, 0, channel.size(), channel);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Смещение в файле сегмента (null для отдельного файла)
+     */
+    public Long getOffset() {
+        return isSlice() ? offset : null;
+    }
+
+    /**
+     * Длина в файле сегмента (null для отдельного файла)
+     */
+    public Long getLength() {
+        return isSlice() ? length : null;
+    }
+
+    /**
+     * Участок файла сегмента, а не отдельный файл
+     */
+    public boolean isSlice() {
+        return length != WHOLE_FILE;
+    }
+
+    public boolean exists() {
+        return channel != null ? channel.isOpen() : Files.exists(path);
+    }
+
+    /**
+     * Размер аудио в байтах
+     */
+    public long size() throws IOException {
+        return isSlice() ? length : Files.size(path);
+    }
+
+    /**
+     * Открывает поток аудио; участок читается из файла позиционным чтением без копии в памяти
+     */
+    public InputStream open() throws IOException {
+        if (channel != null) {
+            return new SliceInputStream(channel, offset, offset + length, false);
+        }
+        if (!isSlice()) {
+            return Files.newInputStream(path);
+        }
+        return new SliceInputStream(FileChannel.open(path, StandardOpenOption.READ), offset, offset + length, true);
+    }
+
+    @Override
+    public String toString() {
+        return isSlice() ? path + "@" + offset + "+" + length : path.toString();
+    }
+
+    /**
+     * Поток участка файла
+     */
+    private static class SliceInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private final boolean closeChannel;
+        private long position;
+
+        SliceInputStream(FileChannel channel, long start, long end, boolean closeChannel) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.closeChannel = closeChannel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            long remaining = end - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (read == -1) {
+                throw new IOException("Audio segment is truncated: expected data up to " + end);
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.lytvest.audiotts.service.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище аудио файлов.
+ *
+ * Файлы раскладываются по двум уровням подкаталогов (256 x 256) по хешу имени файла, чтобы в одном
+ * каталоге не оказывались миллионы файлов: chapters/3f/a0/chapter_42.mp3. Запись идет во временный
+ * файл рядом с целевым, данные сбрасываются на диск и файл атомарно переименовывается, поэтому после
+ * сбоя на месте файла остается либо прежняя версия, либо новая целиком, но не обрезанный файл.
+ */
+@Service
+@Slf4j
+public class AudioStorage {
+
+    public static final String CHAPTERS_DIRECTORY = "chapters";
+    public static final String SEGMENTS_DIRECTORY = "segments";
+    public static final String BOOKS_DIRECTORY = "books";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Запись содержимого файла
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    @Value("${app.storage.audio-path}")
+    private String audioStoragePath;
+
+    @Value("${app.storage.temp-path}")
+    private String tempStoragePath;
+
+    /**
+     * Путь к собранному аудио главы
+     */
+    public Path chapterPath(Long chapterId) {
+        return shardedPath(CHAPTERS_DIRECTORY, "chapter_" + chapterId + ".mp3");
+    }
+
+    /**
+     * Путь к файлу в каталоге хранилища с подкаталогами по хешу имени
+     */
+    public Path shardedPath(String directory, String filename) {
+        CRC32 crc = new CRC32();
+        crc.update(filename.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        return root().resolve(directory)
+                .resolve(String.format("%02x", (hash >>> 24) & 0xFF))
+                .resolve(String.format("%02x", (hash >>> 16) & 0xFF))
+                .resolve(filename);
+    }
+
+    /**
+     * Проверяет, что файл уже лежит в подкаталоге по хешу своего имени
+     */
+    public boolean isSharded(Path file, String directory) {
+        return file.toAbsolutePath().normalize()
+                .equals(shardedPath(directory, file.getFileName().toString()).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Корневой каталог аудио
+     */
+    public Path root() {
+        return Paths.get(audioStoragePath);
+    }
+
+    /**
+     * Создает временный файл для данных, которые еще не переданы в хранилище (например, ответ TTS)
+     */
+    public Path createTempFile(String prefix) throws IOException {
+        Path directory = Paths.get(tempStoragePath);
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, prefix, TEMP_SUFFIX);
+    }
+
+    /**
+     * Удаляет временные файлы, оставшиеся после остановки посреди записи
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cleanTempFiles() {
+        Path directory = Paths.get(tempStoragePath);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            stream.forEach(this::delete);
+        } catch (IOException e) {
+            log.warn("Could not clean temp directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Атомарно записывает файл целиком
+     */
+    public long write(Path target, byte[] data) throws IOException {
+        return write(target, out -> out.write(data));
+    }
+
+    /**
+     * Пишет файл во временный рядом с целевым, сбрасывает на диск и атомарно переименовывает.
+     * Возвращает размер записанного файла
+     */
+    public long write(Path target, ContentWriter writer) throws IOException {
+        Path directory = target.getParent();
+        Files.createDirectories(directory);
+        Path tempPath = Files.createTempFile(directory, target.getFileName().toString() + "_", TEMP_SUFFIX);
+        try {
+            try (FileOutputStream file = new FileOutputStream(tempPath.toFile());
+                 OutputStream out = new BufferedOutputStream(file, 64 * 1024)) {
+                writer.write(out);
+                out.flush();
+                file.getFD().sync();
+            }
+            long size = Files.size(tempPath);
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory);
+            return size;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Атомарно переносит файл в новое место (в пределах хранилища)
+     */
+    public void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * Удаляет файл
+     */
+    public void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete audio file: {}", file, e);
+        }
+    }
+
+    /**
+     * Сбрасывает на диск запись каталога, чтобы переименование пережило сбой питания
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Не все файловые системы и ОС позволяют открыть каталог (например, Windows)
+            log.trace("Could not sync directory {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.lytvest.audiotts.service.storage;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Перенос аудио, записанного до появления текущей раскладки хранилища.
+ *
+ * Отдельные файлы предложений дописываются в сегменты их глав и удаляются; все строки, ссылавшиеся
+ * на файл (копии книг), переключаются на участок одним UPDATE. Файлы глав переносятся под своим именем
+ * в подкаталоги по хешу, поэтому повторный запуск после сбоя находит уже перенесенный файл.
+ * Путь в БД меняется, только если его не изменили параллельно (переозвучка пишет сразу в новое место).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudioStorageMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AudioStorage audioStorage;
+    private final PackedSegmentStore packedSegmentStore;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.storage.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    /**
+     * Итог переноса
+     */
+    @Data
+    public static class MigrationResult {
+        private long packed;
+        private long moved;
+        private long relinked;
+        private long alreadySharded;
+        private long missing;
+        private long failed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup) {
+            migrate();
+        }
+    }
+
+    /**
+     * Упаковывает аудио предложений в сегменты и переносит аудио глав в новую раскладку
+     */
+    public MigrationResult migrate() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Audio storage migration is already running");
+        }
+        try {
+            MigrationResult result = new MigrationResult();
+            packSentences(result);
+            migrateChapters(result);
+            log.info("Audio storage migration finished: {}", result);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void packSentences(MigrationResult result) {
+        String selectSql = "SELECT id, chapter_id, audio_file_path FROM sentences " +
+                "WHERE id > ? AND audio_file_path IS NOT NULL AND audio_offset IS NULL ORDER BY id LIMIT " + BATCH_SIZE;
+        String updateSql = "UPDATE sentences SET audio_file_path = ?, audio_offset = ?, audio_length = ? " +
+                "WHERE audio_file_path = ? AND audio_offset IS NULL";
+
+        long afterId = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList(selectSql, afterId);
+            Set<String> packedPaths = new HashSet<>();
+            for (Map<String, Object> row : rows) {
+                afterId = ((Number) row.get("id")).longValue();
+                Long chapterId = ((Number) row.get("chapter_id")).longValue();
+                String path = (String) row.get("audio_file_path");
+                if (packedPaths.contains(path)) {
+                    // Тот же файл у копии книги: строка уже переключена вместе с первой
+                    result.relinked++;
+                    continue;
+                }
+
+                Path source = Paths.get(path);
+                try {
+                    if (!Files.exists(source)) {
+                        log.warn("Audio file not found, sentence {} left as is: {}", afterId, source);
+                        result.missing++;
+                        continue;
+                    }
+                    packedSegmentStore.append(chapterId, source, slice -> CompletableFuture.completedFuture(
+                            jdbcTemplate.update(updateSql, slice.getPath().toString(), slice.getOffset(), slice.getLength(), path)));
+                    packedPaths.add(path);
+                    audioStorage.delete(source);
+                    result.packed++;
+                } catch (IOException e) {
+                    log.error("Could not pack audio file {} of sentence {}", source, afterId, e);
+                    result.failed++;
+                }
+            }
+            if (!rows.isEmpty()) {
+                log.info("Audio storage migration: sentences up to id {}, {}", afterId, result);
+            }
+        } while (rows.size() == BATCH_SIZE);
+    }
+
+    private void migrateChapters(MigrationResult result) {
+        String selectSql = "SELECT id, audio_file_path FROM chapters " +
+                "WHERE id > ? AND audio_file_path IS NOT NULL ORDER BY id LIMIT " + BATCH_SIZE;
+        String updateSql = "UPDATE chapters SET audio_file_path = ? WHERE id = ? AND audio_file_path = ?";
+
+        long afterId = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList(selectSql, afterId);
+            for (Map<String, Object> row : rows) {
+                afterId = ((Number) row.get("id")).longValue();
+                String path = (String) row.get("audio_file_path");
+                Path source = Paths.get(path);
+                if (audioStorage.isSharded(source, AudioStorage.CHAPTERS_DIRECTORY)) {
+                    result.alreadySharded++;
+                    continue;
+                }
+
+                Path target = audioStorage.shardedPath(AudioStorage.CHAPTERS_DIRECTORY, source.getFileName().toString());
+                try {
+                    if (Files.exists(source) && !Files.exists(target)) {
+                        audioStorage.move(source, target);
+                        result.moved++;
+                    } else if (Files.exists(target)) {
+                        // Файл уже перенесен прерванным запуском
+                        result.relinked++;
+                    } else {
+                        log.warn("Audio file not found, chapter {} left as is: {}", afterId, source);
+                        result.missing++;
+                        continue;
+                    }
+                    jdbcTemplate.update(updateSql, target.toString(), afterId, path);
+                } catch (IOException e) {
+                    log.error("Could not move audio file {} to {}", source, target, e);
+                    result.failed++;
+                }
+            }
+            if (!rows.isEmpty()) {
+                log.info("Audio storage migration: chapters up to id {}, {}", afterId, result);
+            }
+        } while (rows.size() == BATCH_SIZE);
+    }
+}
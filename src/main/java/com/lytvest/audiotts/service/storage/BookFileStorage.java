@@ -0,0 +1,222 @@
+package com.lytvest.audiotts.service.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Хранилище исходных файлов книг.
+ *
+ * Книги хранятся сжатыми (.fb2.zip) независимо от того, в каком виде были загружены;
+ * чтение отдает распакованный поток FB2 без промежуточной копии в памяти или на диске.
+ */
+@Service
+@Slf4j
+public class BookFileStorage {
+
+    private static final String FB2_EXTENSION = ".fb2";
+    private static final String ZIP_EXTENSION = ".zip";
+
+    @Value("${app.storage.books-path}")
+    private String booksStoragePath;
+
+    @Value("${app.upload.max-fb2-size:209715200}")
+    private long maxFb2Size;
+
+    /**
+     * Проверяет, что файл является FB2 или FB2 в ZIP архиве
+     */
+    public static boolean isSupported(String filename) {
+        if (filename == null) {
+            return false;
+        }
+        String name = filename.toLowerCase();
+        return name.endsWith(FB2_EXTENSION) || name.endsWith(FB2_EXTENSION + ZIP_EXTENSION) || name.endsWith(ZIP_EXTENSION);
+    }
+
+    /**
+     * Сохраненный файл книги и SHA-256 распакованного содержимого FB2
+     */
+    public static class StoredBookFile {
+        public final Path path;
+        public final String contentHash;
+
+        public StoredBookFile(Path path, String contentHash) {
+            this.path = path;
+            this.contentHash = contentHash;
+        }
+    }
+
+    /**
+     * Сохраняет загруженный файл в виде .fb2.zip, попутно вычисляя хеш содержимого
+     */
+    public StoredBookFile store(MultipartFile file) throws IOException {
+        Path storagePath = Paths.get(booksStoragePath);
+        Files.createDirectories(storagePath);
+
+        String baseName = baseName(file.getOriginalFilename());
+        Path target = storagePath.resolve(System.currentTimeMillis() + "_" + baseName + FB2_EXTENSION + ZIP_EXTENSION);
+        Path temp = Files.createTempFile(storagePath, "upload_", ".tmp");
+
+        // Хешируем распакованный FB2, чтобы .fb2 и .fb2.zip одной книги совпадали
+        MessageDigest digest = newDigest();
+        try (InputStream fb2 = new DigestInputStream(openUploadedFb2(file), digest);
+             ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            zip.putNextEntry(new ZipEntry(baseName + FB2_EXTENSION));
+            fb2.transferTo(zip);
+            zip.closeEntry();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        String contentHash = HexFormat.of().formatHex(digest.digest());
+        log.debug("Stored book file {} ({} bytes compressed, sha256={})", target, Files.size(target), contentHash);
+        return new StoredBookFile(target, contentHash);
+    }
+
+    /**
+     * Удаляет сохраненный файл книги
+     */
+    public void delete(Path storedFile) {
+        try {
+            Files.deleteIfExists(storedFile);
+        } catch (IOException e) {
+            log.warn("Could not delete file: {}", storedFile, e);
+        }
+    }
+
+    /**
+     * Открывает распакованный поток FB2 сохраненной книги
+     */
+    public InputStream openFb2(Path storedFile) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(storedFile));
+        if (!storedFile.getFileName().toString().toLowerCase().endsWith(ZIP_EXTENSION)) {
+            // Книги, сохраненные до перехода на сжатое хранение
+            return in;
+        }
+        return positionAtFb2Entry(new ZipInputStream(in));
+    }
+
+    private InputStream openUploadedFb2(MultipartFile file) throws IOException {
+        InputStream in = new BufferedInputStream(file.getInputStream());
+        if (file.getOriginalFilename().toLowerCase().endsWith(ZIP_EXTENSION)) {
+            return positionAtFb2Entry(new ZipInputStream(in));
+        }
+        return in;
+    }
+
+    /**
+     * Переходит к записи FB2 в архиве; распакованные данные (вместе с пропущенными записями)
+     * ограничены app.upload.max-fb2-size, чтобы небольшой архив не распаковался в гигабайты
+     */
+    private InputStream positionAtFb2Entry(ZipInputStream zip) throws IOException {
+        SizeLimitedInputStream limited = new SizeLimitedInputStream(zip, maxFb2Size);
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(FB2_EXTENSION)) {
+                    return limited;
+                }
+                // getNextEntry распаковал бы запись без учета; читаем ее сами через лимит
+                limited.transferTo(OutputStream.nullOutputStream());
+            }
+        } catch (IOException | RuntimeException e) {
+            // Превышение лимита или битый архив: вызывающий поток не получит, закрываем сами
+            try {
+                zip.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+        zip.close();
+        throw new IllegalArgumentException("Archive does not contain an FB2 file");
+    }
+
+    /**
+     * Поток, который обрывается с ошибкой, когда прочитано больше limit байт
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) {
+            count += bytes;
+            if (count > limit) {
+                throw new IllegalArgumentException("FB2 file exceeds the maximum uncompressed size of " + limit + " bytes");
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String baseName(String filename) {
+        String name = Paths.get(filename).getFileName().toString();
+        String lower = name.toLowerCase();
+        if (lower.endsWith(ZIP_EXTENSION)) {
+            name = name.substring(0, name.length() - ZIP_EXTENSION.length());
+            lower = name.toLowerCase();
+        }
+        if (lower.endsWith(FB2_EXTENSION)) {
+            name = name.substring(0, name.length() - FB2_EXTENSION.length());
+        }
+        return name;
+    }
+}
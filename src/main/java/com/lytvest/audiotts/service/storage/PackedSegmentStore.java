@@ -0,0 +1,342 @@
+package com.lytvest.audiotts.service.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Аудио предложений, упакованное в файлы сегментов по главам.
+ *
+ * Аудио каждого предложения дописывается в конец файла сегмента своей главы и сбрасывается на диск,
+ * после чего смещение и длина записываются в строку предложения (audio_file_path, audio_offset,
+ * audio_length) - это и есть индекс сегмента. Повторная озвучка дописывает новый участок и меняет
+ * индекс; старый участок становится мусором, который убирает уплотнение: живые участки переписываются
+ * в файл следующего поколения (chapter_42.3.seg), а строки переключаются на него в одной транзакции.
+ * Файл предыдущего поколения удаляется только при следующем уплотнении, чтобы уже прочитанные
+ * смещения оставались действительными. Сегменты удаленной главы удаляются после коммита; участки,
+ * на которые ссылаются предложения копий книги, перед этим переносятся в сегменты их глав.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PackedSegmentStore {
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    private static final String LIVE_SLICES_SQL = "SELECT id, chapter_id, audio_file_path, audio_offset, audio_length FROM sentences " +
+            "WHERE audio_file_path IN (:paths) AND audio_offset IS NOT NULL ORDER BY audio_file_path, audio_offset";
+
+    private static final String MOVE_SLICE_SQL = "UPDATE sentences SET audio_file_path = ?, audio_offset = ? " +
+            "WHERE id = ? AND audio_file_path = ? AND audio_offset = ?";
+
+    private final AudioStorage audioStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.storage.segment-compaction-garbage-ratio:0.3}")
+    private double compactionGarbageRatio;
+
+    private final Map<Long, ChapterSegment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * Текущий сегмент главы: запись и уплотнение идут под одной блокировкой
+     */
+    private static class ChapterSegment {
+        final ReentrantLock lock = new ReentrantLock();
+        // Дописанные участки, смещения которых еще не записаны в БД
+        final AtomicInteger unindexed = new AtomicInteger();
+        int generation;
+        // Глава удалена, ее файлы удаляются
+        boolean deleted;
+    }
+
+    /**
+     * Дописывает аудио из файла в сегмент главы и передает участок в index (запись смещения в БД).
+     * Пока future index не завершен, сегмент главы не уплотняется
+     */
+    public <T> CompletableFuture<T> append(Long chapterId, Path source,
+                                           Function<AudioSegment, CompletableFuture<T>> index) throws IOException {
+        ChapterSegment segment = segment(chapterId);
+        AudioSegment slice;
+        segment.lock.lock();
+        try {
+            if (segment.deleted) {
+                throw new IOException("Chapter " + chapterId + " was deleted");
+            }
+            Path path = segmentPath(chapterId, segment.generation);
+            slice = appendToFile(path, AudioSegment.of(source.toString(), null, null));
+            segment.unindexed.incrementAndGet();
+        } finally {
+            segment.lock.unlock();
+        }
+
+        CompletableFuture<T> indexed;
+        try {
+            indexed = index.apply(slice);
+        } catch (RuntimeException e) {
+            segment.unindexed.decrementAndGet();
+            throw e;
+        }
+        return indexed.whenComplete((result, error) -> segment.unindexed.decrementAndGet());
+    }
+
+    /**
+     * Уплотняет сегмент главы, если мусора в нем больше заданной доли
+     */
+    public boolean compactIfNeeded(Long chapterId) throws IOException {
+        return compact(chapterId, false);
+    }
+
+    /**
+     * Переписывает живые участки в файл следующего поколения и переключает на него строки предложений
+     */
+    public boolean compact(Long chapterId, boolean force) throws IOException {
+        ChapterSegment segment = segment(chapterId);
+        segment.lock.lock();
+        try {
+            if (segment.unindexed.get() > 0) {
+                // Смещения части участков еще не в БД: по таблице их не отличить от мусора
+                log.debug("Segment of chapter {} has unindexed slices, compaction postponed", chapterId);
+                return false;
+            }
+
+            TreeMap<Integer, Path> files = generationFiles(chapterId);
+            if (files.isEmpty()) {
+                return false;
+            }
+            List<Path> paths = new ArrayList<>(files.values());
+            List<Map<String, Object>> rows = new NamedParameterJdbcTemplate(jdbcTemplate).queryForList(LIVE_SLICES_SQL,
+                    new MapSqlParameterSource("paths", paths.stream().map(Path::toString).toList()));
+
+            // Один участок может принадлежать нескольким предложениям (копии книги)
+            Map<String, Long> liveSlices = new LinkedHashMap<>();
+            Map<String, Long> liveBytesByPath = new LinkedHashMap<>();
+            for (Map<String, Object> row : rows) {
+                long length = ((Number) row.get("audio_length")).longValue();
+                if (liveSlices.putIfAbsent(sliceKey(row), length) == null) {
+                    liveBytesByPath.merge((String) row.get("audio_file_path"), length, Long::sum);
+                }
+            }
+            long liveBytes = liveBytesByPath.values().stream().mapToLong(Long::longValue).sum();
+            Path current = files.lastEntry().getValue();
+            long currentSize = Files.size(current);
+            long garbage = currentSize - liveBytesByPath.getOrDefault(current.toString(), 0L);
+            // Живые участки в старых поколениях (прерванное уплотнение) переносятся в любом случае
+            boolean staleGenerations = liveBytes > liveBytesByPath.getOrDefault(current.toString(), 0L);
+            if (!force && !staleGenerations && (garbage == 0 || garbage < currentSize * compactionGarbageRatio)) {
+                return false;
+            }
+            long totalBytes = 0;
+            for (Path path : paths) {
+                totalBytes += Files.size(path);
+            }
+
+            int nextGeneration = files.lastKey() + 1;
+            Path target = segmentPath(chapterId, nextGeneration);
+            Map<String, Long> newOffsets = new LinkedHashMap<>();
+            audioStorage.write(target, out -> {
+                long offset = 0;
+                for (Map<String, Object> row : rows) {
+                    String key = sliceKey(row);
+                    if (newOffsets.containsKey(key)) {
+                        continue;
+                    }
+                    AudioSegment slice = AudioSegment.of((String) row.get("audio_file_path"),
+                            ((Number) row.get("audio_offset")).longValue(), ((Number) row.get("audio_length")).longValue());
+                    try (InputStream in = slice.open()) {
+                        in.transferTo(out);
+                    }
+                    newOffsets.put(key, offset);
+                    offset += slice.size();
+                }
+            });
+
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                updates.add(new Object[]{target.toString(), newOffsets.get(sliceKey(row)), row.get("id"),
+                        row.get("audio_file_path"), row.get("audio_offset")});
+            }
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MOVE_SLICE_SQL, updates));
+            segment.generation = nextGeneration;
+
+            // Предыдущее поколение остается для чтений, которые уже получили смещения в нем
+            files.headMap(files.lastKey()).values().forEach(audioStorage::delete);
+            log.info("Compacted audio segment of chapter {}: {} -> {} bytes, {} slices",
+                    chapterId, totalBytes, liveBytes, newOffsets.size());
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет файлы сегментов удаленных глав (вызывается после коммита удаления).
+     * Файл, на участки которого еще ссылаются предложения (копии книги), сначала освобождается:
+     * участки дописываются в сегменты глав этих предложений, и строки переключаются на них
+     */
+    public void deleteSegments(Collection<Long> chapterIds) {
+        for (Long chapterId : chapterIds) {
+            ChapterSegment segment = segment(chapterId);
+            segment.lock.lock();
+            try {
+                segment.deleted = true;
+                segments.remove(chapterId, segment);
+            } finally {
+                segment.lock.unlock();
+            }
+
+            try {
+                for (Path file : generationFiles(chapterId).values()) {
+                    if (moveLiveSlices(file)) {
+                        audioStorage.delete(file);
+                    } else {
+                        log.warn("Audio segment {} of deleted chapter {} is still referenced, kept", file, chapterId);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not delete audio segments of chapter {}", chapterId, e);
+            }
+        }
+    }
+
+    /**
+     * Переносит участки файла в сегменты глав, предложения которых на них ссылаются;
+     * true - ссылок на файл не осталось
+     */
+    private boolean moveLiveSlices(Path file) throws IOException {
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        MapSqlParameterSource paths = new MapSqlParameterSource("paths", List.of(file.toString()));
+        Map<Long, List<Map<String, Object>>> rowsByChapter = new LinkedHashMap<>();
+        for (Map<String, Object> row : namedJdbcTemplate.queryForList(LIVE_SLICES_SQL, paths)) {
+            rowsByChapter.computeIfAbsent(((Number) row.get("chapter_id")).longValue(), id -> new ArrayList<>()).add(row);
+        }
+
+        for (Map.Entry<Long, List<Map<String, Object>>> chapter : rowsByChapter.entrySet()) {
+            ChapterSegment segment = segment(chapter.getKey());
+            segment.lock.lock();
+            try {
+                if (segment.deleted) {
+                    continue;
+                }
+                Path target = segmentPath(chapter.getKey(), segment.generation);
+                Map<String, Long> newOffsets = new LinkedHashMap<>();
+                List<Object[]> updates = new ArrayList<>();
+                for (Map<String, Object> row : chapter.getValue()) {
+                    Long offset = newOffsets.get(sliceKey(row));
+                    if (offset == null) {
+                        AudioSegment slice = appendToFile(target, AudioSegment.of((String) row.get("audio_file_path"),
+                                ((Number) row.get("audio_offset")).longValue(), ((Number) row.get("audio_length")).longValue()));
+                        offset = slice.getOffset();
+                        newOffsets.put(sliceKey(row), offset);
+                    }
+                    updates.add(new Object[]{target.toString(), offset, row.get("id"),
+                            row.get("audio_file_path"), row.get("audio_offset")});
+                }
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MOVE_SLICE_SQL, updates));
+                log.debug("Moved {} slices of {} to segment of chapter {}", newOffsets.size(), file, chapter.getKey());
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return rowsByChapter.isEmpty() || namedJdbcTemplate.queryForList(LIVE_SLICES_SQL, paths).isEmpty();
+    }
+
+    private ChapterSegment segment(Long chapterId) {
+        return segments.computeIfAbsent(chapterId, id -> {
+            ChapterSegment segment = new ChapterSegment();
+            try {
+                TreeMap<Integer, Path> files = generationFiles(id);
+                segment.generation = files.isEmpty() ? 1 : files.lastKey();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read audio segments of chapter " + id, e);
+            }
+            return segment;
+        });
+    }
+
+    private static AudioSegment appendToFile(Path path, AudioSegment source) throws IOException {
+        boolean created = !Files.exists(path);
+        if (created) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FileChannel in = FileChannel.open(source.getPath(), StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Запись после сбоя могла оборваться: новый участок всегда начинается с конца файла
+            long offset = channel.size();
+            long length = source.size();
+            in.position(source.isSlice() ? source.getOffset() : 0);
+            long copied = 0;
+            // Копирование между каналами без буфера в куче (на Linux - в ядре)
+            while (copied < length) {
+                long transferred = channel.transferFrom(in, offset + copied, length - copied);
+                if (transferred == 0) {
+                    throw new IOException("Audio file " + source + " was truncated while appending");
+                }
+                copied += transferred;
+            }
+            channel.force(false);
+            if (created) {
+                AudioStorage.syncDirectory(path.getParent());
+            }
+            return new AudioSegment(path, offset, length);
+        }
+    }
+
+    /**
+     * Файлы сегмента главы по поколениям
+     */
+    private TreeMap<Integer, Path> generationFiles(Long chapterId) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        Path directory = segmentPath(chapterId, 0).getParent();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        String prefix = "chapter_" + chapterId + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_EXTENSION)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String generation = name.substring(prefix.length(), name.length() - SEGMENT_EXTENSION.length());
+                if (generation.chars().allMatch(Character::isDigit) && !generation.isEmpty()) {
+                    files.put(Integer.parseInt(generation), file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Все поколения сегмента лежат в одном подкаталоге (по хешу имени главы)
+     */
+    private Path segmentPath(Long chapterId, int generation) {
+        return audioStorage.shardedPath(AudioStorage.SEGMENTS_DIRECTORY, "chapter_" + chapterId + SEGMENT_EXTENSION)
+                .resolveSibling("chapter_" + chapterId + "." + generation + SEGMENT_EXTENSION);
+    }
+
+    private static String sliceKey(Map<String, Object> row) {
+        return row.get("audio_file_path") + "@" + row.get("audio_offset");
+    }
+}
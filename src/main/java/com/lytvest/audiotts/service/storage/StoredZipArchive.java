@@ -0,0 +1,250 @@
+package com.lytvest.audiotts.service.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * ZIP архив из готовых файлов без сжатия (STORED).
+ *
+ * Размеры и CRC32 файлов известны заранее, поэтому длина архива считается до записи, а сам архив
+ * пишется прямо в поток: заголовок и содержимое каждого файла, затем центральный каталог.
+ * Смещения за пределами 4 ГБ записываются в полях ZIP64.
+ *
+ * Файлы открываются при создании записей, до отправки заголовков ответа: удаление или замена файла
+ * (пересборка главы) во время отдачи не меняет уже открытое содержимое. Архив нужно закрыть.
+ */
+public class StoredZipArchive implements Closeable {
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    // Заголовок (id и длина) и смещение локального заголовка
+    private static final int ZIP64_OFFSET_EXTRA_SIZE = 4 + 8;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8_NAMES = 0x0800;
+    private static final int METHOD_STORED = 0;
+
+    /**
+     * Файл архива; открывается сразу, размер файла должен совпадать с ожидаемым
+     */
+    public static class Entry implements Closeable {
+        final byte[] name;
+        final Path file;
+        final FileChannel channel;
+        final long size;
+        final long crc32;
+        final int dosTime;
+        final int dosDate;
+        long offset;
+
+        public Entry(String name, Path file, long size, long crc32, LocalDateTime modified) throws IOException {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (channel.size() != size) {
+                channel.close();
+                throw new IOException("File size " + file + " does not match: expected " + size);
+            }
+            this.size = size;
+            this.crc32 = crc32;
+            LocalDateTime time = modified != null && modified.getYear() >= 1980 ? modified : LocalDateTime.of(1980, 1, 1, 0, 0);
+            this.dosTime = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() / 2);
+            this.dosDate = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final boolean zip64;
+
+    public StoredZipArchive(List<Entry> entries) {
+        this.entries = entries;
+
+        long offset = 0;
+        for (Entry entry : entries) {
+            if (entry.size >= ZIP64_LIMIT) {
+                IllegalArgumentException error = new IllegalArgumentException("File is too large for a ZIP entry: " + entry.file);
+                try {
+                    close();
+                } catch (IOException e) {
+                    error.addSuppressed(e);
+                }
+                throw error;
+            }
+            entry.offset = offset;
+            offset += LOCAL_HEADER_SIZE + entry.name.length + entry.size;
+        }
+        this.centralDirectoryOffset = offset;
+
+        long directorySize = 0;
+        for (Entry entry : entries) {
+            directorySize += CENTRAL_HEADER_SIZE + entry.name.length + offsetExtraSize(entry);
+        }
+        this.centralDirectorySize = directorySize;
+        this.zip64 = centralDirectoryOffset >= ZIP64_LIMIT || centralDirectorySize >= ZIP64_LIMIT
+                || entries.size() >= ZIP64_ENTRY_LIMIT;
+    }
+
+    /**
+     * Размер архива в байтах
+     */
+    public long length() {
+        return centralDirectoryOffset + centralDirectorySize
+                + (zip64 ? ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE : 0) + END_SIZE;
+    }
+
+    /**
+     * Пишет архив из открытых файлов; файлы копируются в поток без промежуточного буфера на весь файл
+     */
+    public void write(OutputStream out) throws IOException {
+        for (Entry entry : entries) {
+            out.write(localHeader(entry));
+            // Канал читается с начала, но не закрывается потоком: его закрывает архив
+            CheckedInputStream in = new CheckedInputStream(
+                    Channels.newInputStream(entry.channel.position(0)), new CRC32());
+            long copied = in.transferTo(out);
+            if (copied != entry.size || in.getChecksum().getValue() != entry.crc32) {
+                throw new IOException("File does not match its ZIP header: " + entry.file);
+            }
+        }
+        for (Entry entry : entries) {
+            out.write(centralHeader(entry));
+        }
+        if (zip64) {
+            out.write(zip64End());
+        }
+        out.write(end());
+        out.flush();
+    }
+
+    /**
+     * Закрывает файлы архива
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Entry entry : entries) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static byte[] localHeader(Entry entry) {
+        ByteBuffer header = buffer(LOCAL_HEADER_SIZE + entry.name.length);
+        header.putInt(0x04034b50);
+        header.putShort((short) VERSION_STORED);
+        header.putShort((short) FLAG_UTF8_NAMES);
+        header.putShort((short) METHOD_STORED);
+        header.putShort((short) entry.dosTime);
+        header.putShort((short) entry.dosDate);
+        header.putInt((int) entry.crc32);
+        header.putInt((int) entry.size);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+        header.put(entry.name);
+        return header.array();
+    }
+
+    private static byte[] centralHeader(Entry entry) {
+        int extraSize = offsetExtraSize(entry);
+        int version = extraSize > 0 ? VERSION_ZIP64 : VERSION_STORED;
+        ByteBuffer header = buffer(CENTRAL_HEADER_SIZE + entry.name.length + extraSize);
+        header.putInt(0x02014b50);
+        header.putShort((short) VERSION_ZIP64);
+        header.putShort((short) version);
+        header.putShort((short) FLAG_UTF8_NAMES);
+        header.putShort((short) METHOD_STORED);
+        header.putShort((short) entry.dosTime);
+        header.putShort((short) entry.dosDate);
+        header.putInt((int) entry.crc32);
+        header.putInt((int) entry.size);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extraSize);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) Math.min(entry.offset, ZIP64_LIMIT));
+        header.put(entry.name);
+        if (extraSize > 0) {
+            header.putShort((short) 0x0001);
+            header.putShort((short) 8);
+            header.putLong(entry.offset);
+        }
+        return header.array();
+    }
+
+    private byte[] zip64End() {
+        ByteBuffer record = buffer(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE);
+        record.putInt(0x06064b50);
+        record.putLong(ZIP64_END_SIZE - 12);
+        record.putShort((short) VERSION_ZIP64);
+        record.putShort((short) VERSION_ZIP64);
+        record.putInt(0);
+        record.putInt(0);
+        record.putLong(entries.size());
+        record.putLong(entries.size());
+        record.putLong(centralDirectorySize);
+        record.putLong(centralDirectoryOffset);
+
+        record.putInt(0x07064b50);
+        record.putInt(0);
+        record.putLong(centralDirectoryOffset + centralDirectorySize);
+        record.putInt(1);
+        return record.array();
+    }
+
+    private byte[] end() {
+        ByteBuffer record = buffer(END_SIZE);
+        record.putInt(0x06054b50);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) (zip64 ? ZIP64_ENTRY_LIMIT : entries.size()));
+        record.putShort((short) (zip64 ? ZIP64_ENTRY_LIMIT : entries.size()));
+        record.putInt((int) (zip64 ? ZIP64_LIMIT : centralDirectorySize));
+        record.putInt((int) (zip64 ? ZIP64_LIMIT : centralDirectoryOffset));
+        record.putShort((short) 0);
+        return record.array();
+    }
+
+    private static int offsetExtraSize(Entry entry) {
+        return entry.offset >= ZIP64_LIMIT ? ZIP64_OFFSET_EXTRA_SIZE : 0;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
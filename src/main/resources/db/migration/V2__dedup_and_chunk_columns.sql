@@ -0,0 +1,10 @@
+-- Колонки, добавленные после исходной схемы. IF NOT EXISTS: БД, созданные ddl-auto=update на промежуточных
+-- версиях, уже могут их содержать
+
+-- Поиск повторной загрузки по хешу распакованного FB2 и число склеенных повторов предложений
+ALTER TABLE books ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+ALTER TABLE books ADD COLUMN IF NOT EXISTS deduplicated_sentences INTEGER;
+
+-- Исходные предложения главы, из которых собран фрагмент для TTS
+ALTER TABLE sentences ADD COLUMN IF NOT EXISTS source_sentence_number INTEGER;
+ALTER TABLE sentences ADD COLUMN IF NOT EXISTS source_sentence_count INTEGER;
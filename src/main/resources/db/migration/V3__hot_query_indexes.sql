@@ -0,0 +1,32 @@
+-- Составные индексы для частых запросов
+
+-- Прогресс и выборка предложений главы по статусу
+CREATE INDEX idx_sentences_chapter_status ON sentences (chapter_id, status);
+
+-- Keyset пагинация предложений по статусу
+CREATE INDEX idx_sentences_status_id ON sentences (status, id);
+
+-- Переозвучка и повторная обработка по персонажу
+CREATE INDEX idx_sentences_character ON sentences (character_id);
+
+-- Главы книги по порядку
+CREATE INDEX idx_chapters_book_number ON chapters (book_id, chapter_number);
+
+-- Выборка глав по статусу
+CREATE INDEX idx_chapters_status ON chapters (status);
+
+-- Поиск повторной загрузки по хешу
+CREATE INDEX idx_books_content_hash ON books (content_hash);
+
+-- Персонаж уникален в книге: сначала сливаем уже созданные дубликаты в персонажа с наименьшим id
+UPDATE sentences SET character_id = (
+    SELECT MIN(duplicate.id)
+    FROM characters original
+    JOIN characters duplicate ON duplicate.book_id = original.book_id AND duplicate.name = original.name
+    WHERE original.id = sentences.character_id
+)
+WHERE character_id IS NOT NULL;
+
+DELETE FROM characters WHERE id NOT IN (SELECT MIN(id) FROM characters GROUP BY book_id, name);
+
+ALTER TABLE characters ADD CONSTRAINT uk_characters_book_name UNIQUE (book_id, name);
@@ -0,0 +1,6 @@
+-- Размер и CRC32 собранного аудио главы: ZIP книги пишется с известными заранее размерами
+ALTER TABLE chapters ADD COLUMN audio_size BIGINT;
+ALTER TABLE chapters ADD COLUMN audio_crc32 BIGINT;
+
+-- Главы, собранные без контрольной суммы, собираются заново при старте
+UPDATE chapters SET status = 'IN_PROGRESS', audio_file_path = NULL WHERE status = 'READY';
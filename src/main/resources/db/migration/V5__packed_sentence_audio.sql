@@ -0,0 +1,6 @@
+-- Аудио предложения - участок файла сегмента главы; без смещения audio_file_path указывает на отдельный файл
+ALTER TABLE sentences ADD COLUMN audio_offset BIGINT;
+ALTER TABLE sentences ADD COLUMN audio_length BIGINT;
+
+-- Уплотнение сегмента ищет предложения по файлу
+CREATE INDEX idx_sentences_audio_file_path ON sentences (audio_file_path);
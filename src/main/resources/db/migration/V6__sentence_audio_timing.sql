@@ -0,0 +1,5 @@
+-- Длительность аудио предложения в сэмплах (время начала предложения в главе - сумма сэмплов предыдущих)
+-- и объем его MP3 кадров (смещения предложений в склеенной главе)
+ALTER TABLE sentences ADD COLUMN audio_samples BIGINT;
+ALTER TABLE sentences ADD COLUMN audio_sample_rate INTEGER;
+ALTER TABLE sentences ADD COLUMN audio_frame_bytes BIGINT;
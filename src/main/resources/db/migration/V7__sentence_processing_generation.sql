@@ -0,0 +1,3 @@
+-- Поколение обработки предложения: растет при каждом сбросе (повторная обработка, новая редакция, переозвучка),
+-- результаты задач прошлых поколений не записываются
+ALTER TABLE sentences ADD COLUMN processing_generation INTEGER DEFAULT 0 NOT NULL;
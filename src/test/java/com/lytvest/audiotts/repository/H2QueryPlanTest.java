@@ -0,0 +1,12 @@
+package com.lytvest.audiotts.repository;
+
+/**
+ * Планы запросов на H2 (встроенная БД по умолчанию)
+ */
+class H2QueryPlanTest extends QueryPlanTest {
+
+    @Override
+    protected String fullScanMarker() {
+        return "tableScan";
+    }
+}
@@ -0,0 +1,35 @@
+package com.lytvest.audiotts.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Планы запросов на PostgreSQL (Testcontainers; без Docker тест пропускается).
+ *
+ * В пустых таблицах планировщик и так выбирает последовательный просмотр, поэтому он выключается:
+ * Seq Scan в плане остается, только если подходящего индекса нет.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("postgresql")
+class PostgresQueryPlanTest extends QueryPlanTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15");
+
+    @BeforeEach
+    void disableSequentialScans() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+    }
+
+    @Override
+    protected String fullScanMarker() {
+        return "Seq Scan";
+    }
+}
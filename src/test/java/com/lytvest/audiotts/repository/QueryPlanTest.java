@@ -0,0 +1,194 @@
+package com.lytvest.audiotts.repository;
+
+import com.lytvest.audiotts.model.enums.ChapterStatus;
+import com.lytvest.audiotts.model.enums.SentenceStatus;
+import org.assertj.core.api.SoftAssertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет по EXPLAIN, что запросы SentenceRepository и ChapterRepository идут по индексам из миграций.
+ *
+ * SQL метода перехватывается при настоящем вызове (StatementInspector Hibernate), затем для него строится
+ * план с подставленными параметрами. План должен использовать ожидаемые индексы и не просматривать
+ * таблицы целиком. Таблицы заполняются данными с реалистичным распределением (много глав и предложений,
+ * несколько статусов) и собирается статистика, иначе планировщик выбирает индекс наугад.
+ * Индекс с той же первой колонкой считается равноценным: H2 сам индексирует внешние
+ * ключи и для поиска только по chapter_id выбирает такой индекс вместо составного.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.lytvest.audiotts.repository.QueryPlanTest$CapturingInspector")
+abstract class QueryPlanTest {
+
+    private static final int CHAPTERS = 200;
+    private static final int SENTENCES_PER_CHAPTER = 20;
+
+    // Параметр сравнивается с колонкой статуса: подставляем статус очереди (десятая часть предложений), иначе число
+    private static final Pattern STATUS_PARAMETER = Pattern.compile("status\\s*(=|in\\s*\\()\\s*$", Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SentenceRepository sentenceRepository;
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    // Планы всех методов проверяются до конца теста, чтобы видеть все проблемные запросы сразу
+    private final SoftAssertions softly = new SoftAssertions();
+
+    /**
+     * Запоминает SQL, который Hibernate отправляет в БД
+     */
+    public static class CapturingInspector implements StatementInspector {
+        static final List<String> statements = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (statements) {
+                statements.add(sql);
+            }
+            return sql;
+        }
+    }
+
+    @BeforeEach
+    void fillTables() {
+        jdbcTemplate.update("INSERT INTO books (title) VALUES ('Book')");
+        Long bookId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM books", Long.class);
+        List<Object[]> chapters = new ArrayList<>();
+        for (int number = 1; number <= CHAPTERS; number++) {
+            chapters.add(new Object[]{bookId, number});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO chapters (book_id, title, chapter_number, status) " +
+                "VALUES (?, 'Chapter', ?, 'IN_PROGRESS')", chapters);
+
+        List<Object[]> sentences = new ArrayList<>();
+        for (Long chapterId : jdbcTemplate.queryForList("SELECT id FROM chapters WHERE book_id = ?", Long.class, bookId)) {
+            for (int number = 1; number <= SENTENCES_PER_CHAPTER; number++) {
+                SentenceStatus status = number % 10 == 0 ? SentenceStatus.WAITING_FOR_TTS : SentenceStatus.READY;
+                sentences.add(new Object[]{chapterId, number, status.name()});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO sentences (chapter_id, sentence_number, original_text, status) " +
+                "VALUES (?, ?, 'Text', ?)", sentences);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    /**
+     * Признак полного просмотра таблицы в плане
+     */
+    protected abstract String fullScanMarker();
+
+    @Test
+    void sentenceQueriesUseIndexes() {
+        assertPlan(() -> sentenceRepository.findByChapterIdOrderBySentenceNumber(-1L), "idx_sentences_chapter_status");
+        assertPlan(() -> sentenceRepository.findByStatus(SentenceStatus.GENERATING_TTS), "idx_sentences_status_id");
+        assertPlan(() -> sentenceRepository.findSummariesByStatusAfterId(SentenceStatus.GENERATING_TTS, 0L, Limit.of(50)),
+                "idx_sentences_status_id");
+        assertPlan(() -> sentenceRepository.findByChapterIdAndStatus(-1L, SentenceStatus.READY), "idx_sentences_chapter_status");
+        assertPlan(() -> sentenceRepository.countByChapterIdAndStatus(-1L, SentenceStatus.READY), "idx_sentences_chapter_status");
+        assertPlan(() -> sentenceRepository.countByChapterId(-1L), "idx_sentences_chapter_status");
+        assertPlan(() -> sentenceRepository.findFirstByStatusOrderById(SentenceStatus.GENERATING_TTS), "idx_sentences_status_id");
+        // По первичному ключу
+        assertPlan(() -> sentenceRepository.findChapterIdById(-1L));
+    }
+
+    @Test
+    void chapterQueriesUseIndexes() {
+        assertPlan(() -> chapterRepository.findByBookIdOrderByChapterNumber(-1L), "idx_chapters_book_number");
+        assertPlan(() -> chapterRepository.findByStatus(ChapterStatus.READY), "idx_chapters_status");
+        assertPlan(() -> chapterRepository.findByIdWithSentences(-1L), "idx_sentences_chapter_status");
+        assertPlan(() -> chapterRepository.findByBookIdAndChapterNumber(-1L, 1), "idx_chapters_book_number");
+    }
+
+    @AfterEach
+    void verifyPlans() {
+        softly.assertAll();
+    }
+
+    private void assertPlan(Runnable query, String... indexes) {
+        String sql = capture(query);
+        String plan = explain(sql);
+        for (String index : indexes) {
+            List<String> equivalent = equivalentIndexes(index);
+            softly.assertThat(equivalent).as("indexes equivalent to %s", index).isNotEmpty();
+            softly.assertThat(equivalent).as("plan of %s uses %s:%n%s", sql, index, plan)
+                    .anyMatch(name -> plan.toLowerCase().contains(name.toLowerCase()));
+        }
+        softly.assertThat(plan).as("plan of %s", sql).doesNotContainIgnoringCase(fullScanMarker());
+    }
+
+    private static String capture(Runnable query) {
+        synchronized (CapturingInspector.statements) {
+            CapturingInspector.statements.clear();
+        }
+        query.run();
+        synchronized (CapturingInspector.statements) {
+            assertThat(CapturingInspector.statements).as("SQL statements").hasSize(1);
+            return CapturingInspector.statements.get(0);
+        }
+    }
+
+    /**
+     * Индексы, начинающиеся с той же колонки, что и index (включая его самого)
+     */
+    private List<String> equivalentIndexes(String index) {
+        return jdbcTemplate.execute((Connection connection) -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, String> leadingColumns = new HashMap<>();
+            String leadingColumn = null;
+            for (String table : List.of("books", "chapters", "sentences", "characters")) {
+                String tableName = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase() : table;
+                try (ResultSet rs = metaData.getIndexInfo(null, null, tableName, false, false)) {
+                    while (rs.next()) {
+                        if (rs.getString("INDEX_NAME") == null || rs.getShort("ORDINAL_POSITION") != 1) {
+                            continue;
+                        }
+                        String key = table + "." + rs.getString("COLUMN_NAME").toLowerCase();
+                        leadingColumns.put(rs.getString("INDEX_NAME"), key);
+                        if (rs.getString("INDEX_NAME").equalsIgnoreCase(index)) {
+                            leadingColumn = key;
+                        }
+                    }
+                }
+            }
+            List<String> result = new ArrayList<>();
+            for (Map.Entry<String, String> entry : leadingColumns.entrySet()) {
+                if (entry.getValue().equals(leadingColumn)) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        });
+    }
+
+    private String explain(String sql) {
+        List<Object> parameters = new ArrayList<>();
+        for (int i = sql.indexOf('?'); i >= 0; i = sql.indexOf('?', i + 1)) {
+            Matcher status = STATUS_PARAMETER.matcher(sql.substring(0, i));
+            parameters.add(status.find() ? SentenceStatus.WAITING_FOR_TTS.name() : 1L);
+        }
+        List<String> rows = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters.toArray());
+        return String.join("\n", rows);
+    }
+}